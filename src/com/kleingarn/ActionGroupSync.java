@@ -0,0 +1,150 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streams the leader's ten action groups into a single bitmask and pushes only the groups that
+ * flipped since the last sync to the followers. A tick where no action group changed costs no RPCs.
+ * The mask is tracked per follower and only advanced once its push succeeded, so a follower that was
+ * busy, timed out or failed gets the groups on a later tick, and one that joined late gets all ten.
+ */
+public class ActionGroupSync {
+
+    final static Logger logger = LoggerFactory.getLogger(ActionGroupSync.class);
+
+    public final static int actionGroupCount = 10;
+
+    private final Connection connection;
+    // replaced whole by repoint(), refresh() reads one consistent list
+    private volatile List<Stream<Boolean>> actionGroups;
+
+    private volatile int mask;
+    // last mask each follower fully received
+    private final Map<SpaceCenter.Vessel, Integer> pushedMasks = new ConcurrentHashMap<>();
+
+    public ActionGroupSync(Connection connection, SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        this.connection = connection;
+        this.actionGroups = open(leader);
+        refresh();
+    }
+
+    private List<Stream<Boolean>> open(SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        SpaceCenter.Control leadControl = leader.getControl();
+        List<Stream<Boolean>> streams = new ArrayList<>();
+        for (int i = 0; i < actionGroupCount; i++) {
+            streams.add(connection.addStream(leadControl, "getActionGroup", i));
+        }
+        return streams;
+    }
+
+    /**
+     * Streams the action groups of a new leader, e.g. from a LeaderHealthMonitor failover listener.
+     * Followers get whatever groups the new leader has set differently on their next sync.
+     */
+    public synchronized void repoint(SpaceCenter.Vessel newLeader) throws RPCException, StreamException {
+        List<Stream<Boolean>> old = actionGroups;
+        actionGroups = open(newLeader);
+        // the new leader is flown, not synced
+        pushedMasks.remove(newLeader);
+        remove(old);
+        refresh();
+    }
+
+    /**
+     * Reads the streamed action group states into the bitmask, bit i is action group i.
+     */
+    public int refresh() {
+        int newMask = 0;
+        List<Stream<Boolean>> streams = actionGroups;
+        try {
+            for (int i = 0; i < actionGroupCount; i++) {
+                if (streams.get(i).get()) {
+                    newMask |= 1 << i;
+                }
+            }
+            mask = newMask;
+        } catch (StreamException e) {
+            e.printStackTrace();
+        }
+        return mask;
+    }
+
+    public int getMask() {
+        return mask;
+    }
+
+    // state of a leader action group as of the last refresh, no RPC
+    public boolean get(int groupNumber) {
+        return (mask & (1 << groupNumber)) != 0;
+    }
+
+    /**
+     * Refreshes the mask and pushes to each follower the action groups that differ from what it last
+     * received, concurrently on the squadron executor. A follower's first push sends all ten groups.
+     */
+    public void sync(List<SpaceCenter.Vessel> followers, SquadronExecutor executor) {
+        int current = refresh();
+        // evicted or merged followers
+        pushedMasks.keySet().retainAll(new HashSet<>(followers));
+        List<SpaceCenter.Vessel> behind = new ArrayList<>();
+        for (SpaceCenter.Vessel vessel : followers) {
+            Integer pushed = pushedMasks.get(vessel);
+            if (pushed == null || pushed != current) {
+                behind.add(vessel);
+            }
+        }
+        if (behind.isEmpty()) {
+            return;
+        }
+        logger.debug("Action groups mask {}, pushing to {} of {} followers",
+                Integer.toBinaryString(current), behind.size(), followers.size());
+
+        executor.runTick(behind, v -> pushChanges(v, current));
+    }
+
+    private void pushChanges(SpaceCenter.Vessel vessel, int current) {
+        Integer pushed = pushedMasks.get(vessel);
+        int changed = pushed == null ? (1 << actionGroupCount) - 1 : current ^ pushed;
+        try {
+            FollowerControlMirror mirror = FollowerControlMirror.of(vessel);
+            for (int i = 0; i < actionGroupCount; i++) {
+                if ((changed & (1 << i)) != 0) {
+                    mirror.setActionGroup(i, (current & (1 << i)) != 0);
+                }
+            }
+            pushedMasks.put(vessel, current);
+        } catch (RPCException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            logger.error("Vessel {} missing, could not set action groups", vessel);
+            e.printStackTrace();
+        }
+    }
+
+    public void close() {
+        remove(actionGroups);
+    }
+
+    // one by one, an old leader that is gone can fail some removes
+    private static void remove(List<Stream<Boolean>> streams) {
+        for (Stream<Boolean> stream : streams) {
+            try {
+                stream.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.kleingarn;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Picks the squadron loop rate from how hard the leader is manoeuvring. Each tick the leader frame
+ * is compared with the previous one: attitude rate, throttle rate and action group or control
+ * state changes each give an activity level between 0 and 1. Activity jumps up immediately and
+ * decays slowly once the leader settles, and the tick rate is scaled between minHz and maxHz with it.
+ *
+ * Straight and level flight drops to minHz, a turn or a throttle change brings the squadron back
+ * to maxHz on the next tick.
+ */
+public class AdaptiveRateController {
+
+    final static Logger logger = LoggerFactory.getLogger(AdaptiveRateController.class);
+
+    // at or above these the leader counts as fully manoeuvring
+    private final static double fullScaleAngularRateDegPerSec = 30;
+    private final static double fullScaleThrottleRatePerSec = 0.5;
+    // activity halves every this many seconds once the leader settles
+    private final static double activityHalfLifeSeconds = 2;
+    // retune the ticker only when the rate moves by more than this fraction, or hits a limit
+    private final static double retuneThreshold = 0.1;
+
+    private final String name;
+    private final double minHz;
+    private final double maxHz;
+
+    private LeaderSnapshot.Frame previous;
+    private int previousMask;
+    private double activity = 1;
+    private double currentHz;
+    private long decisions;
+
+    public AdaptiveRateController(String name, double minHz, double maxHz) {
+        if (minHz <= 0 || maxHz < minHz) {
+            throw new IllegalArgumentException("Need 0 < minHz <= maxHz, got " + minHz + " and " + maxHz);
+        }
+        this.name = name;
+        this.minHz = minHz;
+        this.maxHz = maxHz;
+        // start fast, the first quiet ticks bring it down
+        this.currentHz = maxHz;
+    }
+
+    /**
+     * Updates the rate from the tick's leader frame and sets it on the ticker when it changed.
+     */
+    public void adjust(MissionTicker ticker, LeaderSnapshot.Frame frame) {
+        adjust(ticker, frame, previousMask());
+    }
+
+    /**
+     * As adjust(ticker, frame), also counting changed bits of the leader's action group mask as activity.
+     */
+    public void adjust(MissionTicker ticker, LeaderSnapshot.Frame frame, int actionGroupMask) {
+        double hz = update(frame, actionGroupMask);
+        if (Math.abs(ticker.getTargetHz() - hz) > 1e-6) {
+            ticker.setTargetHz(hz);
+        }
+    }
+
+    /**
+     * Returns the tick rate in Hz for the activity seen up to this frame.
+     */
+    public synchronized double update(LeaderSnapshot.Frame frame, int actionGroupMask) {
+        LeaderSnapshot.Frame last = previous;
+        int lastMask = previousMask;
+        if (last != null && frame.getTimestampNanos() <= last.getTimestampNanos()) {
+            // snapshot didn't refresh, nothing new to judge
+            return currentHz;
+        }
+        previous = frame;
+        previousMask = actionGroupMask;
+        if (last == null) {
+            return currentHz;
+        }
+
+        double dt = (frame.getTimestampNanos() - last.getTimestampNanos()) / 1_000_000_000.0;
+        double angularRate = Math.max(Math.abs(frame.getPitch() - last.getPitch()),
+                Math.max(Math.abs(AngleUtils.delta(frame.getRoll(), last.getRoll())),
+                        Math.abs(AngleUtils.delta(frame.getHeading(), last.getHeading())))) / dt;
+        double throttleRate = Math.abs(frame.getThrottle() - last.getThrottle()) / dt;
+        int changedGroups = Integer.bitCount(actionGroupMask ^ lastMask);
+        boolean controlsChanged = changedGroups > 0
+                || frame.getGear() != last.getGear()
+                || frame.getBrakes() != last.getBrakes()
+                || frame.getLights() != last.getLights()
+                || frame.getCurrentStage() != last.getCurrentStage();
+
+        double sample = Math.max(angularRate / fullScaleAngularRateDegPerSec, throttleRate / fullScaleThrottleRatePerSec);
+        if (controlsChanged) {
+            sample = 1;
+        }
+        double decayed = activity * Math.pow(0.5, dt / activityHalfLifeSeconds);
+        activity = Math.min(1, Math.max(sample, decayed));
+
+        double hz = minHz + (maxHz - minHz) * activity;
+        // snap onto minHz, the decay only approaches it
+        if (hz - minHz < retuneThreshold * minHz) {
+            hz = minHz;
+        }
+        if (hz != currentHz && (hz == minHz || hz == maxHz || Math.abs(hz - currentHz) > retuneThreshold * currentHz)) {
+            logger.info("[{}] tick rate {} Hz -> {} Hz, attitude {} deg/s, throttle {}/s, {} action groups changed{}",
+                    name,
+                    String.format("%.1f", currentHz),
+                    String.format("%.1f", hz),
+                    String.format("%.1f", angularRate),
+                    String.format("%.2f", throttleRate),
+                    changedGroups,
+                    controlsChanged && changedGroups == 0 ? ", controls changed" : "");
+            currentHz = hz;
+            decisions++;
+        }
+        return currentHz;
+    }
+
+    public synchronized double getCurrentHz() {
+        return currentHz;
+    }
+
+    public synchronized double getActivity() {
+        return activity;
+    }
+
+    // number of rate changes made
+    public synchronized long getDecisions() {
+        return decisions;
+    }
+
+    private synchronized int previousMask() {
+        return previousMask;
+    }
+}
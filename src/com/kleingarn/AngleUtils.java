@@ -0,0 +1,29 @@
+package com.kleingarn;
+
+/**
+ * Degree arithmetic for attitudes that wrap at 360, so 359 and 1 are 2 degrees apart.
+ */
+public class AngleUtils {
+
+    // wraps any angle into [0, 360), for headings
+    public static double wrap360(double degrees) {
+        double wrapped = degrees % 360;
+        return wrapped < 0 ? wrapped + 360 : wrapped;
+    }
+
+    // wraps any angle into [-180, 180)
+    public static double wrap180(double degrees) {
+        double wrapped = (degrees + 180) % 360;
+        return (wrapped < 0 ? wrapped + 360 : wrapped) - 180;
+    }
+
+    // shortest signed difference a - b in degrees
+    public static double delta(double a, double b) {
+        return wrap180(a - b);
+    }
+
+    // smallest unsigned difference between two angles in degrees
+    public static double between(double a, double b) {
+        return Math.abs(delta(a, b));
+    }
+}
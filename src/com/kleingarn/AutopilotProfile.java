@@ -0,0 +1,147 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+
+import java.util.Objects;
+
+/**
+ * Immutable set of AutoPilot tuning parameters. A null parameter is left as it is on the vessel.
+ * Apply it through FollowerControlMirror.setProfile, which remembers the profile each follower
+ * already has and only pushes parameters when the vessel is new or its profile changes.
+ */
+public final class AutopilotProfile {
+
+    // Triplet<Double, Double, Double> = pitch, roll, yaw
+    private final String name;
+    private final Triplet<Double, Double, Double> stoppingTime;
+    private final Triplet<Double, Double, Double> decelerationTime;
+    private final Triplet<Double, Double, Double> timeToPeak;
+    private final Triplet<Double, Double, Double> attenuationAngle;
+    private final Double rollThreshold;
+
+    public AutopilotProfile(String name) {
+        this(name, null, null, null, null, null);
+    }
+
+    private AutopilotProfile(String name,
+                             Triplet<Double, Double, Double> stoppingTime,
+                             Triplet<Double, Double, Double> decelerationTime,
+                             Triplet<Double, Double, Double> timeToPeak,
+                             Triplet<Double, Double, Double> attenuationAngle,
+                             Double rollThreshold) {
+        this.name = name;
+        this.stoppingTime = stoppingTime;
+        this.decelerationTime = decelerationTime;
+        this.timeToPeak = timeToPeak;
+        this.attenuationAngle = attenuationAngle;
+        this.rollThreshold = rollThreshold;
+    }
+
+    public AutopilotProfile withStoppingTime(Triplet<Double, Double, Double> stoppingTime) {
+        return new AutopilotProfile(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    public AutopilotProfile withDecelerationTime(Triplet<Double, Double, Double> decelerationTime) {
+        return new AutopilotProfile(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    public AutopilotProfile withTimeToPeak(Triplet<Double, Double, Double> timeToPeak) {
+        return new AutopilotProfile(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    public AutopilotProfile withAttenuationAngle(Triplet<Double, Double, Double> attenuationAngle) {
+        return new AutopilotProfile(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    public AutopilotProfile withRollThreshold(double rollThreshold) {
+        return new AutopilotProfile(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    /**
+     * Pushes the parameters that differ from the previous profile, or all set parameters when there
+     * is no previous profile. Returns the number of RPCs issued.
+     */
+    public int applyTo(SpaceCenter.AutoPilot autoPilot, AutopilotProfile previous) throws RPCException {
+        int writes = 0;
+        if (stoppingTime != null && (previous == null || !stoppingTime.equals(previous.stoppingTime))) {
+            autoPilot.setStoppingTime(stoppingTime);
+            writes++;
+        }
+        if (decelerationTime != null && (previous == null || !decelerationTime.equals(previous.decelerationTime))) {
+            autoPilot.setDecelerationTime(decelerationTime);
+            writes++;
+        }
+        if (timeToPeak != null && (previous == null || !timeToPeak.equals(previous.timeToPeak))) {
+            autoPilot.setTimeToPeak(timeToPeak);
+            writes++;
+        }
+        if (attenuationAngle != null && (previous == null || !attenuationAngle.equals(previous.attenuationAngle))) {
+            autoPilot.setAttenuationAngle(attenuationAngle);
+            writes++;
+        }
+        if (rollThreshold != null && (previous == null || !rollThreshold.equals(previous.rollThreshold))) {
+            autoPilot.setRollThreshold(rollThreshold);
+            writes++;
+        }
+        return writes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Triplet<Double, Double, Double> getStoppingTime() {
+        return stoppingTime;
+    }
+
+    public Triplet<Double, Double, Double> getDecelerationTime() {
+        return decelerationTime;
+    }
+
+    public Triplet<Double, Double, Double> getTimeToPeak() {
+        return timeToPeak;
+    }
+
+    public Triplet<Double, Double, Double> getAttenuationAngle() {
+        return attenuationAngle;
+    }
+
+    public Double getRollThreshold() {
+        return rollThreshold;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof AutopilotProfile)) {
+            return false;
+        }
+        AutopilotProfile other = (AutopilotProfile) o;
+        return Objects.equals(name, other.name)
+                && Objects.equals(stoppingTime, other.stoppingTime)
+                && Objects.equals(decelerationTime, other.decelerationTime)
+                && Objects.equals(timeToPeak, other.timeToPeak)
+                && Objects.equals(attenuationAngle, other.attenuationAngle)
+                && Objects.equals(rollThreshold, other.rollThreshold);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, stoppingTime, decelerationTime, timeToPeak, attenuationAngle, rollThreshold);
+    }
+
+    @Override
+    public String toString() {
+        return "AutopilotProfile{" + name
+                + ", stoppingTime=" + stoppingTime
+                + ", decelerationTime=" + decelerationTime
+                + ", timeToPeak=" + timeToPeak
+                + ", attenuationAngle=" + attenuationAngle
+                + ", rollThreshold=" + rollThreshold
+                + "}";
+    }
+}
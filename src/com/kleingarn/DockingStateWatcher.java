@@ -0,0 +1,228 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tells when VTOL engine pods have docked back onto the craft. Every docking port of a watched pod
+ * streams its state and the pod's future completes as soon as one reports DOCKED. Pods held by a
+ * claw have no docking port; they are merged into the craft when grabbed, so the vessel list is
+ * streamed as well. A pod that drops out of it is checked through its root part: if the part now
+ * belongs to another vessel the pod merged and completes, if the part is gone too the pod was
+ * destroyed and its future completes exceptionally.
+ *
+ * rampThrottle() raises a pod's throttle on a scheduled task until its future completes, instead of
+ * a sleep loop polling the ports.
+ */
+public class DockingStateWatcher {
+
+    final static Logger logger = LoggerFactory.getLogger(DockingStateWatcher.class);
+
+    private final Connection connection;
+    private final Stream<List<SpaceCenter.Vessel>> vessels;
+    private final Map<SpaceCenter.Vessel, Watch> watches = new ConcurrentHashMap<>();
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    // ramps, stream removal and other RPCs, never on the stream thread
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4, r -> {
+        Thread thread = new Thread(r, "docking-watcher-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public DockingStateWatcher(Connection connection) throws RPCException, StreamException {
+        this.connection = connection;
+        this.vessels = connection.addStream(SpaceCenter.class, "getVessels");
+        vessels.addCallback(current -> {
+            if (current == null) {
+                return;
+            }
+            HashSet<SpaceCenter.Vessel> present = new HashSet<>(current);
+            for (Watch watch : watches.values()) {
+                if (!present.contains(watch.pod)) {
+                    // telling merged from destroyed takes an RPC, keep it off the stream thread
+                    scheduler.execute(() -> resolveVanished(watch));
+                }
+            }
+        });
+        vessels.start();
+    }
+
+    /**
+     * Completes with the pod once one of its docking ports is DOCKED or the pod merged into another
+     * vessel, exceptionally if the pod was destroyed.
+     */
+    public CompletableFuture<SpaceCenter.Vessel> watch(SpaceCenter.Vessel pod) throws RPCException, StreamException {
+        Watch existing = watches.get(pod);
+        if (existing != null) {
+            return existing.docked;
+        }
+        Watch watch = new Watch(pod, pod.getParts().getRoot());
+        watches.put(pod, watch);
+        for (SpaceCenter.DockingPort port : PartQuery.on(pod).dockingPorts()) {
+            Stream<SpaceCenter.DockingPortState> state = connection.addStream(port, "getState");
+            watch.streams.add(state);
+            // stream thread, no RPCs here
+            state.addCallback(value -> {
+                if (value == SpaceCenter.DockingPortState.DOCKED) {
+                    complete(watch, "port docked");
+                }
+            });
+            state.start();
+        }
+        logger.info("Watching {} docking ports of pod {}", watch.streams.size(), pod);
+        return watch.docked;
+    }
+
+    /**
+     * Raises the pod's throttle by ratePerSecond, wrapping back to 0 above full, every periodMillis
+     * until the pod's watch completes.
+     */
+    public ScheduledFuture<?> rampThrottle(SpaceCenter.Vessel pod, float ratePerSecond, long periodMillis) {
+        Watch watch = watches.get(pod);
+        if (watch == null) {
+            throw new IllegalStateException("Pod " + pod + " is not watched");
+        }
+        float step = ratePerSecond * periodMillis / 1000f;
+        // every step is a new value well below the mirror's thresholds, write the control directly
+        SpaceCenter.Control control;
+        try {
+            control = FollowerControlMirror.of(pod).getControl();
+        } catch (RPCException e) {
+            e.printStackTrace();
+            return null;
+        }
+        AtomicInteger steps = new AtomicInteger();
+        ScheduledFuture<?> ramp = scheduler.scheduleAtFixedRate(() -> {
+            if (watch.docked.isDone()) {
+                return;
+            }
+            float throttle = step * steps.getAndIncrement();
+            if (throttle > 1.0F) {
+                steps.set(0);
+                throttle = 0;
+            }
+            try {
+                control.setThrottle(throttle);
+            } catch (RPCException e) {
+                e.printStackTrace();
+            } catch (IllegalArgumentException e) {
+                // pod is gone as a vessel of its own, merged or destroyed
+                resolveVanished(watch);
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+        watch.ramp = ramp;
+        if (watch.docked.isDone()) {
+            ramp.cancel(false);
+        }
+        return ramp;
+    }
+
+    // the pod left the vessel list, its root part tells whether it merged or was destroyed
+    private void resolveVanished(Watch watch) {
+        if (watch.docked.isDone()) {
+            return;
+        }
+        try {
+            SpaceCenter.Vessel into = watch.rootPart.getVessel();
+            complete(watch, "merged into " + into);
+        } catch (RPCException e) {
+            e.printStackTrace();
+            fail(watch, new IllegalStateException("Pod " + watch.pod + " left the vessel list and could not be checked", e));
+        } catch (IllegalArgumentException e) {
+            fail(watch, new IllegalStateException("Pod " + watch.pod + " was destroyed", e));
+        }
+    }
+
+    private void complete(Watch watch, String reason) {
+        if (!watch.docked.complete(watch.pod)) {
+            return;
+        }
+        logger.info("Pod {} docked after {} ms, {}", watch.pod, (System.nanoTime() - watch.startNanos) / 1_000_000, reason);
+        finish(watch);
+    }
+
+    private void fail(Watch watch, Exception cause) {
+        if (!watch.docked.completeExceptionally(cause)) {
+            return;
+        }
+        logger.error("{} after {} ms", cause.getMessage(), (System.nanoTime() - watch.startNanos) / 1_000_000);
+        finish(watch);
+    }
+
+    private void finish(Watch watch) {
+        watches.remove(watch.pod, watch);
+        if (watch.ramp != null) {
+            watch.ramp.cancel(false);
+        }
+        // merged or destroyed, the pod's handle is done either way
+        FollowerControlMirror.forget(watch.pod);
+        // removing streams is an RPC, keep it off the stream thread
+        scheduler.execute(() -> {
+            PartGraph.forget(watch.pod);
+            for (Stream<SpaceCenter.DockingPortState> stream : watch.streams) {
+                try {
+                    stream.remove();
+                } catch (RPCException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    public void close() {
+        List<Watch> unfinished = new ArrayList<>(watches.values());
+        watches.clear();
+        scheduler.shutdownNow();
+        for (Watch watch : unfinished) {
+            watch.docked.cancel(false);
+            if (watch.ramp != null) {
+                watch.ramp.cancel(false);
+            }
+            for (Stream<SpaceCenter.DockingPortState> stream : watch.streams) {
+                try {
+                    stream.remove();
+                } catch (RPCException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        try {
+            vessels.remove();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Watch {
+        final SpaceCenter.Vessel pod;
+        // stays valid when the pod merges into the craft, gone when the pod is destroyed
+        final SpaceCenter.Part rootPart;
+        final CompletableFuture<SpaceCenter.Vessel> docked = new CompletableFuture<>();
+        final List<Stream<SpaceCenter.DockingPortState>> streams = new CopyOnWriteArrayList<>();
+        final long startNanos = System.nanoTime();
+        volatile ScheduledFuture<?> ramp;
+
+        Watch(SpaceCenter.Vessel pod, SpaceCenter.Part rootPart) {
+            this.pod = pod;
+            this.rootPart = rootPart;
+        }
+    }
+}
@@ -7,28 +7,16 @@ import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
-import static java.util.stream.Collectors.toList;
-
 public class DockingUtils {
 
     final static Logger logger = LoggerFactory.getLogger(DockingUtils.class);
 
+    // one withName call, cached per vessel until its parts change
     public static List<SpaceCenter.Part> getSpecificPartsOnVessel(SpaceCenter.Vessel vessel, String partName){
         try{
-            List<SpaceCenter.Part> allParts = vessel.getParts().getAll();
-            logger.info("Printing all parts on vessel, searching for {}", partName);
-            printParts(allParts);
-            allParts.removeIf(part -> {
-                try {
-                    return !part.getName().equals(partName);
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;
-            });
-            logger.info(partName + " count: " + allParts.size());
-            printParts(allParts);
-            return allParts;
+            List<SpaceCenter.Part> parts = PartQuery.on(vessel).named(partName).list();
+            logger.info(partName + " count: " + parts.size());
+            return parts;
         } catch (RPCException e) {
             e.printStackTrace();
         }
@@ -37,16 +25,8 @@ public class DockingUtils {
 
     public static List<SpaceCenter.Part> getPartsWithDockingPorts(SpaceCenter.Vessel vessel){
         try{
-            List<SpaceCenter.Part> dockingPorts = vessel.getParts().getAll();
-            dockingPorts.removeIf(part -> {
-                try {
-                    return part.getDockingPort() == null;
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;
-            });
-            printParts(dockingPorts);
+            List<SpaceCenter.Part> dockingPorts = PartQuery.on(vessel).withModule(PartQuery.Module.DOCKING_PORT).list();
+            logger.info("Docking port count: {}", dockingPorts.size());
             return dockingPorts;
         } catch (RPCException e) {
             e.printStackTrace();
@@ -56,36 +36,24 @@ public class DockingUtils {
 
     public static List<SpaceCenter.Part> getPartsWithClaws(SpaceCenter.Vessel vessel){
         // [main] INFO com.kleingarn.DockingUtils - Part name: GrapplingDevice, Stage: -1
-        try{
-            List<SpaceCenter.Part> claws = vessel.getParts().getAll();
-            claws.removeIf(part -> {
-                try {
-                    return !part.getName().equals("GrapplingDevice");
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;
-            });
-            printParts(claws);
-            return claws;
-        } catch (RPCException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return getSpecificPartsOnVessel(vessel, "GrapplingDevice");
     }
 
     public static void undockDockedPorts(SpaceCenter.Vessel vessel, List<SpaceCenter.Part> partsWithDockingPorts) {
         logger.info("Checking if parts are docked");
         for(SpaceCenter.Part part : partsWithDockingPorts) {
             try {
-                if (part.getDockingPort().getState().equals(SpaceCenter.DockingPortState.DOCKED)) {
+                SpaceCenter.DockingPort dockingPort = part.getDockingPort();
+                if (dockingPort.getState().equals(SpaceCenter.DockingPortState.DOCKED)) {
                     try {
-                        part.getDockingPort().undock();
+                        dockingPort.undock();
+                        // the undocked parts left this vessel
+                        PartGraph.invalidate(vessel);
                     } catch(UnsupportedOperationException e) {
-                        logger.info("Trouble undocking part {}", part.getName());
+                        logger.info("Trouble undocking part {}", part);
                         e.printStackTrace();
                     }
-                    logger.info("Undocked {}", part.getName());
+                    logger.info("Undocked {}", part);
                 }
             } catch (RPCException e1) {
                 e1.printStackTrace();
@@ -131,14 +99,9 @@ public class DockingUtils {
         //[main] INFO com.kleingarn.DockingUtils - Part name: probeCoreOcto2, Stage: -1
 
         try {
-            List<SpaceCenter.Part> allParts = vessel.getParts().getAll();
-            printParts(allParts);
-
-            for (SpaceCenter.Part p : allParts) {
-                if (p.getName().equals(probePartName)) {
-                    vessel.getParts().setControlling(p);
-                    logger.info("Controlling {} from part {}", vessel, p);
-                }
+            for (SpaceCenter.Part p : PartQuery.on(vessel).named(probePartName).list()) {
+                vessel.getParts().setControlling(p);
+                logger.info("Controlling {} from part {}", vessel, p);
             }
         } catch (RPCException e) {
             e.printStackTrace();
@@ -146,14 +109,10 @@ public class DockingUtils {
         return false;
     }
 
-    public static void printParts(List<SpaceCenter.Part> partsList) {
-        partsList.stream().forEach(
-            p -> {
-                try {
-                logger.info("Part name: {}, Stage: {}", p.getName(), p.getDecoupleStage());
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-            });
+    // names and stages from the part graph, no RPCs
+    public static void printParts(PartGraph graph, List<SpaceCenter.Part> partsList) {
+        for (SpaceCenter.Part p : partsList) {
+            logger.info("Part name: {}, Stage: {}", graph.getName(p), graph.getDecoupleStage(p));
+        }
     }
 }
@@ -0,0 +1,99 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mirrors the leader's engine mode (e.g. a RAPIER switching between air breathing and closed cycle)
+ * onto the followers' multi-mode engines. The leader's mode is streamed, each follower's multi-mode
+ * engines are looked up once and cached, and setMode is only called on a follower when the leader's
+ * mode differs from the mode last applied to it.
+ */
+public class EngineRegistry {
+
+    final static Logger logger = LoggerFactory.getLogger(EngineRegistry.class);
+
+    private final Stream<String> leaderMode;
+
+    private final Map<SpaceCenter.Vessel, List<SpaceCenter.Engine>> multiModeEngines = new ConcurrentHashMap<>();
+    private final Map<SpaceCenter.Vessel, String> appliedMode = new ConcurrentHashMap<>();
+
+    /**
+     * Streams the mode of the leader engine at leaderEngineIndex in leader.getParts().getEngines().
+     */
+    public EngineRegistry(Connection connection, SpaceCenter.Vessel leader, int leaderEngineIndex) throws RPCException, StreamException {
+        SpaceCenter.Engine leadEngine = leader.getParts().getEngines().get(leaderEngineIndex);
+        this.leaderMode = connection.addStream(leadEngine, "getMode");
+        logger.info("Streaming leader engine mode, currently {}", leaderMode.get());
+    }
+
+    public String getLeaderMode() throws StreamException {
+        return leaderMode.get();
+    }
+
+    /**
+     * The follower's engines that have modes, fetched on first use over the follower's own connection.
+     */
+    public List<SpaceCenter.Engine> getMultiModeEngines(SpaceCenter.Vessel vessel) throws RPCException {
+        List<SpaceCenter.Engine> engines = multiModeEngines.get(vessel);
+        if (engines == null) {
+            engines = new ArrayList<>();
+            for (SpaceCenter.Engine engine : FollowerControlMirror.of(vessel).getVessel().getParts().getEngines()) {
+                if (engine.getHasModes()) {
+                    engines.add(engine);
+                }
+            }
+            engines = Collections.unmodifiableList(engines);
+            multiModeEngines.put(vessel, engines);
+            logger.info("Vessel {} has {} multi-mode engines", vessel, engines.size());
+        }
+        return engines;
+    }
+
+    /**
+     * Sets the follower's multi-mode engines to the leader's mode if it flipped since the last call.
+     * Costs no RPCs while the mode is unchanged.
+     */
+    public void mirrorLeaderMode(SpaceCenter.Vessel vessel) throws RPCException {
+        String mode;
+        try {
+            mode = leaderMode.get();
+        } catch (StreamException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (mode == null || mode.equals(appliedMode.get(vessel))) {
+            return;
+        }
+        for (SpaceCenter.Engine engine : getMultiModeEngines(vessel)) {
+            engine.setMode(mode);
+        }
+        appliedMode.put(vessel, mode);
+        logger.info("Vessel {} engines set to mode {}", vessel, mode);
+    }
+
+    // call after a follower's engines change, e.g. staging, or when it leaves the squadron
+    public void forget(SpaceCenter.Vessel vessel) {
+        multiModeEngines.remove(vessel);
+        appliedMode.remove(vessel);
+    }
+
+    public void close() {
+        try {
+            leaderMode.remove();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+}
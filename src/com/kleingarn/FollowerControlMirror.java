@@ -0,0 +1,367 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last value written to each control and autopilot target of a follower vessel and
+ * only sends an RPC when the new value differs from it by more than the threshold for its unit. In
+ * steady flight most of the per-tick writes from the follow loops are repeats of the previous tick
+ * and get dropped here.
+ *
+ * The player, a vessel reload or another script can change a control or disengage the autopilot
+ * behind the mirror's back. Every resync interval the remembered control values are dropped, so
+ * the next write of each control goes to the server again and corrects any drift. The autopilot
+ * profile and engage are only resent after an explicit invalidate(), e.g. an active vessel switch.
+ */
+public class FollowerControlMirror {
+
+    final static Logger logger = LoggerFactory.getLogger(FollowerControlMirror.class);
+
+    private final static Map<SpaceCenter.Vessel, FollowerControlMirror> mirrors = new ConcurrentHashMap<>();
+    private final static AtomicLong totalWritesIssued = new AtomicLong();
+    private final static AtomicLong totalWritesSuppressed = new AtomicLong();
+
+    // throttle fraction 0..1
+    private static volatile float defaultThrottleEpsilon = 0.001f;
+    // pitch, roll and heading in degrees
+    private static volatile float defaultAngleEpsilon = 0.1f;
+    // components of a unit direction vector, 0.001 is about 0.06 degrees
+    private static volatile double defaultDirectionEpsilon = 0.001;
+    private static volatile long resyncNanos = TimeUnit.SECONDS.toNanos(5);
+
+    // when set, new mirrors talk to their vessel over its pinned pool connection
+    private static volatile KrpcConnectionPool connectionPool;
+
+    private final SpaceCenter.Vessel vessel;
+    private final SpaceCenter.Control control;
+    private final SpaceCenter.AutoPilot autoPilot;
+    private final float throttleEpsilon;
+    private final float angleEpsilon;
+    private final double directionEpsilon;
+
+    private final AtomicLong writesIssued = new AtomicLong();
+    private final AtomicLong writesSuppressed = new AtomicLong();
+
+    private Boolean brakes;
+    private Boolean gear;
+    private Boolean sas;
+    private SpaceCenter.SASMode sasMode;
+    private Boolean lights;
+    private final Boolean[] actionGroups = new Boolean[ActionGroupSync.actionGroupCount];
+    private Float throttle;
+    private Float wheelThrottle;
+    private Float targetPitch;
+    private Float targetRoll;
+    private Float targetHeading;
+    private Triplet<Double, Double, Double> targetDirection;
+    private AutopilotProfile profile;
+    private boolean engaged;
+    private long syncedAt = System.nanoTime();
+
+    public FollowerControlMirror(SpaceCenter.Vessel vessel, float throttleEpsilon, float angleEpsilon,
+                                 double directionEpsilon) throws RPCException {
+        this.vessel = vessel;
+        this.control = vessel.getControl();
+        this.autoPilot = vessel.getAutoPilot();
+        this.throttleEpsilon = throttleEpsilon;
+        this.angleEpsilon = angleEpsilon;
+        this.directionEpsilon = directionEpsilon;
+    }
+
+    /**
+     * Returns the mirror for a vessel, creating it with the default thresholds on first use.
+     * With a connection pool in use the mirror's vessel, control and autopilot are the pinned handles.
+     */
+    public static FollowerControlMirror of(SpaceCenter.Vessel vessel) throws RPCException {
+        FollowerControlMirror mirror = mirrors.get(vessel);
+        if (mirror == null) {
+            KrpcConnectionPool pool = connectionPool;
+            mirror = new FollowerControlMirror(pool == null ? vessel : pool.pin(vessel),
+                    defaultThrottleEpsilon, defaultAngleEpsilon, defaultDirectionEpsilon);
+            FollowerControlMirror existing = mirrors.putIfAbsent(vessel, mirror);
+            if (existing != null) {
+                mirror = existing;
+            }
+        }
+        return mirror;
+    }
+
+    public static void forget(SpaceCenter.Vessel vessel) {
+        mirrors.remove(vessel);
+        KrpcConnectionPool pool = connectionPool;
+        if (pool != null) {
+            pool.unpin(vessel);
+        }
+    }
+
+    public static void useConnectionPool(KrpcConnectionPool pool) {
+        connectionPool = pool;
+        mirrors.clear();
+    }
+
+    public static void setDefaultEpsilons(float throttle, float angleDegrees, double direction) {
+        defaultThrottleEpsilon = throttle;
+        defaultAngleEpsilon = angleDegrees;
+        defaultDirectionEpsilon = direction;
+    }
+
+    // how often remembered values are dropped and resent, 0 disables write suppression
+    public static void setResyncMillis(long millis) {
+        resyncNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public SpaceCenter.Vessel getVessel() {
+        return vessel;
+    }
+
+    public SpaceCenter.Control getControl() {
+        return control;
+    }
+
+    public SpaceCenter.AutoPilot getAutoPilot() {
+        return autoPilot;
+    }
+
+    public synchronized void setBrakes(boolean value) throws RPCException {
+        resyncIfDue();
+        if (brakes != null && brakes == value) {
+            suppressed();
+            return;
+        }
+        control.setBrakes(value);
+        brakes = value;
+        issued();
+    }
+
+    public synchronized void setGear(boolean value) throws RPCException {
+        resyncIfDue();
+        if (gear != null && gear == value) {
+            suppressed();
+            return;
+        }
+        control.setGear(value);
+        gear = value;
+        issued();
+    }
+
+    public synchronized void setSAS(boolean value) throws RPCException {
+        resyncIfDue();
+        if (sas != null && sas == value) {
+            suppressed();
+            return;
+        }
+        control.setSAS(value);
+        sas = value;
+        issued();
+    }
+
+    public synchronized void setSASMode(SpaceCenter.SASMode value) throws RPCException {
+        resyncIfDue();
+        if (value == sasMode) {
+            suppressed();
+            return;
+        }
+        control.setSASMode(value);
+        sasMode = value;
+        issued();
+    }
+
+    public synchronized void setLights(boolean value) throws RPCException {
+        resyncIfDue();
+        if (lights != null && lights == value) {
+            suppressed();
+            return;
+        }
+        control.setLights(value);
+        lights = value;
+        issued();
+    }
+
+    public synchronized void setActionGroup(int group, boolean value) throws RPCException {
+        resyncIfDue();
+        if (actionGroups[group] != null && actionGroups[group] == value) {
+            suppressed();
+            return;
+        }
+        control.setActionGroup(group, value);
+        actionGroups[group] = value;
+        issued();
+    }
+
+    public synchronized void setThrottle(float value) throws RPCException {
+        resyncIfDue();
+        if (throttle != null && Math.abs(throttle - value) <= throttleEpsilon) {
+            suppressed();
+            return;
+        }
+        control.setThrottle(value);
+        throttle = value;
+        issued();
+    }
+
+    public synchronized void setWheelThrottle(float value) throws RPCException {
+        resyncIfDue();
+        if (wheelThrottle != null && Math.abs(wheelThrottle - value) <= throttleEpsilon) {
+            suppressed();
+            return;
+        }
+        control.setWheelThrottle(value);
+        wheelThrottle = value;
+        issued();
+    }
+
+    public synchronized void setTargetPitch(float value) throws RPCException {
+        resyncIfDue();
+        if (targetPitch != null && Math.abs(targetPitch - value) <= angleEpsilon) {
+            suppressed();
+            return;
+        }
+        autoPilot.setTargetPitch(value);
+        targetPitch = value;
+        issued();
+    }
+
+    public synchronized void setTargetRoll(float value) throws RPCException {
+        resyncIfDue();
+        if (targetRoll != null && AngleUtils.between(targetRoll, value) <= angleEpsilon) {
+            suppressed();
+            return;
+        }
+        autoPilot.setTargetRoll(value);
+        targetRoll = value;
+        issued();
+    }
+
+    public synchronized void setTargetHeading(float value) throws RPCException {
+        resyncIfDue();
+        if (targetHeading != null && AngleUtils.between(targetHeading, value) <= angleEpsilon) {
+            suppressed();
+            return;
+        }
+        autoPilot.setTargetHeading(value);
+        targetHeading = value;
+        issued();
+    }
+
+    public synchronized void setTargetDirection(Triplet<Double, Double, Double> value) throws RPCException {
+        resyncIfDue();
+        if (targetDirection != null
+                && Math.abs(targetDirection.getValue0() - value.getValue0()) <= directionEpsilon
+                && Math.abs(targetDirection.getValue1() - value.getValue1()) <= directionEpsilon
+                && Math.abs(targetDirection.getValue2() - value.getValue2()) <= directionEpsilon) {
+            suppressed();
+            return;
+        }
+        autoPilot.setTargetDirection(value);
+        targetDirection = value;
+        issued();
+    }
+
+    /**
+     * Tunes the autopilot with a profile. Nothing is sent while the vessel already has this profile;
+     * on a change only the parameters that differ from the current profile are pushed.
+     */
+    public synchronized void setProfile(AutopilotProfile value) throws RPCException {
+        if (value.equals(profile)) {
+            suppressed();
+            return;
+        }
+        int writes = value.applyTo(autoPilot, profile);
+        logger.info("Applied autopilot profile {} to {} with {} writes", value.getName(), vessel, writes);
+        profile = value;
+        issued();
+    }
+
+    public synchronized AutopilotProfile getProfile() {
+        return profile;
+    }
+
+    public synchronized void engage() throws RPCException {
+        if (engaged) {
+            suppressed();
+            return;
+        }
+        autoPilot.engage();
+        engaged = true;
+        issued();
+    }
+
+    /**
+     * Forgets every remembered value so the next write of each control goes to the server.
+     * Use after something outside this mirror has touched the vessel, e.g. an active vessel switch.
+     */
+    public synchronized void invalidate() {
+        forgetControls();
+        profile = null;
+        engaged = false;
+    }
+
+    // the timed resync, cheap control writes only; profile and engage stay until invalidate()
+    private void forgetControls() {
+        brakes = null;
+        gear = null;
+        sas = null;
+        sasMode = null;
+        lights = null;
+        Arrays.fill(actionGroups, null);
+        throttle = null;
+        wheelThrottle = null;
+        targetPitch = null;
+        targetRoll = null;
+        targetHeading = null;
+        targetDirection = null;
+        syncedAt = System.nanoTime();
+    }
+
+    private void resyncIfDue() {
+        if (System.nanoTime() - syncedAt >= resyncNanos) {
+            forgetControls();
+        }
+    }
+
+    public long getWritesIssued() {
+        return writesIssued.get();
+    }
+
+    public long getWritesSuppressed() {
+        return writesSuppressed.get();
+    }
+
+    public static long getTotalWritesIssued() {
+        return totalWritesIssued.get();
+    }
+
+    public static long getTotalWritesSuppressed() {
+        return totalWritesSuppressed.get();
+    }
+
+    public static void logStats() {
+        long issued = totalWritesIssued.get();
+        long suppressed = totalWritesSuppressed.get();
+        long total = issued + suppressed;
+        logger.info("Follower control writes issued: {}, suppressed: {} ({}%)",
+                issued,
+                suppressed,
+                total == 0 ? 0 : (suppressed * 100) / total);
+    }
+
+    private void issued() {
+        writesIssued.incrementAndGet();
+        totalWritesIssued.incrementAndGet();
+    }
+
+    private void suppressed() {
+        writesSuppressed.incrementAndGet();
+        totalWritesSuppressed.incrementAndGet();
+    }
+}
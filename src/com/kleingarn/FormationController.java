@@ -0,0 +1,293 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps followers in formation slots around the leader instead of only copying its attitude.
+ * Every follower's position is streamed in the leader's vessel reference frame (x right, y forward,
+ * z down), so the offset from its slot is read without RPCs. Once per tick all followers are
+ * corrected in one pass: lateral error trims heading, vertical error trims pitch and
+ * longitudinal error trims throttle, each through its own client-side PID.
+ *
+ * Unlike SAS TARGET mode this does not depend on the active vessel.
+ */
+public class FormationController {
+
+    final static Logger logger = LoggerFactory.getLogger(FormationController.class);
+
+    public enum Formation {
+        // followers stepped back and to the right of the leader
+        ECHELON,
+        // followers stepped back, alternating right and left
+        VEE,
+        // followers abreast of the leader, alternating right and left
+        LINE
+    }
+
+    public enum Output {
+        // trim the autopilot's target pitch and heading
+        AUTOPILOT,
+        // drive pitch and yaw inputs directly, the autopilot must be disengaged
+        CONTROL
+    }
+
+    // correction limits, degrees of heading and pitch away from the leader's and throttle fraction
+    private final static double maxHeadingCorrection = 15;
+    private final static double maxPitchCorrection = 10;
+    private final static double maxThrottleCorrection = 0.3;
+
+    private final Connection connection;
+    private SpaceCenter.Vessel leader;
+    private SpaceCenter.ReferenceFrame leaderFrame;
+    private final Formation formation;
+    private final double spacing;
+    private final Output output;
+
+    private final Map<SpaceCenter.Vessel, Slot> slots = new ConcurrentHashMap<>();
+    private int nextSlot = 1;
+    private long lastTickNanos;
+
+    public FormationController(Connection connection, SpaceCenter.Vessel leader, Formation formation,
+                               double spacing, Output output) throws RPCException {
+        this.connection = connection;
+        this.leader = leader;
+        this.leaderFrame = leader.getReferenceFrame();
+        this.formation = formation;
+        this.spacing = spacing;
+        this.output = output;
+    }
+
+    /**
+     * Gives each follower, in list order, the next free slot of the formation.
+     */
+    public synchronized void assignSlots(List<SpaceCenter.Vessel> vessels) throws RPCException, StreamException {
+        for (SpaceCenter.Vessel vessel : vessels) {
+            if (!vessel.equals(leader) && !slots.containsKey(vessel)) {
+                int index = nextSlot++;
+                Stream<Triplet<Double, Double, Double>> position = connection.addStream(vessel, "position", leaderFrame);
+                slots.put(vessel, new Slot(slotOffset(index), position));
+                logger.info("Vessel {} flies {} slot {}", vessel, formation, index);
+            }
+        }
+    }
+
+    /**
+     * Moves the formation onto a new leader. Every follower keeps its slot, now measured in the new
+     * leader's reference frame, with fresh controllers; the new leader's own slot stays empty.
+     */
+    public synchronized void repoint(SpaceCenter.Vessel newLeader) throws RPCException, StreamException {
+        forget(newLeader);
+        leader = newLeader;
+        leaderFrame = newLeader.getReferenceFrame();
+        for (Map.Entry<SpaceCenter.Vessel, Slot> entry : slots.entrySet()) {
+            Slot old = entry.getValue();
+            Stream<Triplet<Double, Double, Double>> position = connection.addStream(entry.getKey(), "position", leaderFrame);
+            entry.setValue(new Slot(old.offset, position));
+            try {
+                old.position.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+        lastTickNanos = 0;
+        logger.info("Formation of {} followers now flies on {}", slots.size(), newLeader);
+    }
+
+    // offset of the index'th follower (from 1) in the leader's reference frame, x right, y forward, z down
+    private double[] slotOffset(int index) {
+        int rank = (index + 1) / 2;
+        double side = index % 2 == 1 ? 1 : -1;
+        switch (formation) {
+            case ECHELON:
+                return new double[] {index * spacing, -index * spacing, 0};
+            case VEE:
+                return new double[] {side * rank * spacing, -rank * spacing, 0};
+            case LINE:
+            default:
+                return new double[] {side * rank * spacing, 0, 0};
+        }
+    }
+
+    /**
+     * Computes every follower's correction from one snapshot of the streamed positions.
+     */
+    public synchronized Map<SpaceCenter.Vessel, Correction> update(LeaderSnapshot.Frame leaderState) {
+        long now = leaderState.getTimestampNanos();
+        double dt = lastTickNanos == 0 ? 0 : (now - lastTickNanos) / 1_000_000_000.0;
+        lastTickNanos = now;
+
+        // snapshot all positions first, then run the controllers over flat arrays
+        int n = slots.size();
+        List<SpaceCenter.Vessel> vessels = new ArrayList<>(n);
+        List<Slot> vesselSlots = new ArrayList<>(n);
+        double[] lateral = new double[n];
+        double[] longitudinal = new double[n];
+        double[] vertical = new double[n];
+        int count = 0;
+        for (Map.Entry<SpaceCenter.Vessel, Slot> entry : slots.entrySet()) {
+            Triplet<Double, Double, Double> position;
+            try {
+                position = entry.getValue().position.get();
+            } catch (StreamException e) {
+                e.printStackTrace();
+                continue;
+            }
+            if (position == null) {
+                continue;
+            }
+            double[] offset = entry.getValue().offset;
+            // positive when the follower is right of, behind and below its slot
+            lateral[count] = position.getValue0() - offset[0];
+            longitudinal[count] = offset[1] - position.getValue1();
+            vertical[count] = position.getValue2() - offset[2];
+            vessels.add(entry.getKey());
+            vesselSlots.add(entry.getValue());
+            count++;
+        }
+
+        Map<SpaceCenter.Vessel, Correction> corrections = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Slot slot = vesselSlots.get(i);
+            double headingTrim = -slot.lateral.update(lateral[i], dt);
+            double pitchTrim = slot.vertical.update(vertical[i], dt);
+            double throttleTrim = slot.longitudinal.update(longitudinal[i], dt);
+            corrections.put(vessels.get(i), new Correction(
+                    lateral[i], longitudinal[i], vertical[i],
+                    (float) normalizeHeading(leaderState.getHeading() + headingTrim),
+                    (float) (leaderState.getPitch() + pitchTrim),
+                    (float) clamp(leaderState.getThrottle() + throttleTrim, 0, 1),
+                    (float) (headingTrim / maxHeadingCorrection),
+                    (float) (pitchTrim / maxPitchCorrection)));
+        }
+        return corrections;
+    }
+
+    /**
+     * Pushes a correction to the follower, as autopilot targets or raw inputs depending on the output mode.
+     */
+    public void apply(FollowerControlMirror mirror, Correction correction, LeaderSnapshot.Frame leaderState) throws RPCException {
+        if (output == Output.AUTOPILOT) {
+            mirror.setTargetPitch(correction.getTargetPitch());
+            mirror.setTargetHeading(correction.getTargetHeading());
+            mirror.setTargetRoll(leaderState.getRoll());
+        } else {
+            SpaceCenter.Control control = mirror.getControl();
+            control.setPitch(correction.getPitchInput());
+            control.setYaw(correction.getYawInput());
+        }
+        mirror.setThrottle(correction.getThrottle());
+    }
+
+    public void forget(SpaceCenter.Vessel vessel) {
+        Slot slot = slots.remove(vessel);
+        if (slot != null) {
+            try {
+                slot.position.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public Formation getFormation() {
+        return formation;
+    }
+
+    private static double normalizeHeading(double heading) {
+        double normalized = heading % 360;
+        return normalized < 0 ? normalized + 360 : normalized;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static class Slot {
+        final double[] offset;
+        final Stream<Triplet<Double, Double, Double>> position;
+        // error in metres in, degrees or throttle fraction out
+        final PidController lateral = new PidController(0.15, 0.01, 0.3, -maxHeadingCorrection, maxHeadingCorrection);
+        final PidController vertical = new PidController(0.1, 0.01, 0.2, -maxPitchCorrection, maxPitchCorrection);
+        final PidController longitudinal = new PidController(0.01, 0.001, 0.02, -maxThrottleCorrection, maxThrottleCorrection);
+
+        Slot(double[] offset, Stream<Triplet<Double, Double, Double>> position) {
+            this.offset = offset;
+            this.position = position;
+        }
+    }
+
+    /**
+     * One follower's slot error and the resulting targets for a single tick.
+     */
+    public static class Correction {
+
+        private final double lateralError;
+        private final double longitudinalError;
+        private final double verticalError;
+        private final float targetHeading;
+        private final float targetPitch;
+        private final float throttle;
+        private final float yawInput;
+        private final float pitchInput;
+
+        Correction(double lateralError, double longitudinalError, double verticalError,
+                   float targetHeading, float targetPitch, float throttle, float yawInput, float pitchInput) {
+            this.lateralError = lateralError;
+            this.longitudinalError = longitudinalError;
+            this.verticalError = verticalError;
+            this.targetHeading = targetHeading;
+            this.targetPitch = targetPitch;
+            this.throttle = throttle;
+            this.yawInput = yawInput;
+            this.pitchInput = pitchInput;
+        }
+
+        // metres right of the slot
+        public double getLateralError() {
+            return lateralError;
+        }
+
+        // metres behind the slot
+        public double getLongitudinalError() {
+            return longitudinalError;
+        }
+
+        // metres below the slot
+        public double getVerticalError() {
+            return verticalError;
+        }
+
+        public float getTargetHeading() {
+            return targetHeading;
+        }
+
+        public float getTargetPitch() {
+            return targetPitch;
+        }
+
+        public float getThrottle() {
+            return throttle;
+        }
+
+        public float getYawInput() {
+            return yawInput;
+        }
+
+        public float getPitchInput() {
+            return pitchInput;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.StreamException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages before the next stage's tanks run dry instead of one polling period after. Each update()
+ * measures the burn rate of every resource the next stage drops from the StageFuelMonitor's
+ * streamed amounts, estimates when the first of them empties and arms activateNextStage on a
+ * timer for leadTimeMillis before that, re-arming as the estimate moves. If a tank still runs
+ * dry first, the stage is activated as soon as its amount stream reads empty, not on the next tick.
+ *
+ * Predictions are only scored against a burnout that actually happened: the time a tank's amount
+ * stream first read empty, compared with the burnout predicted when staging was last armed. The
+ * error is predicted minus actual, positive when the prediction was late. A staging that beat the
+ * burnout has nothing to score against; it reports the fuel it dropped unburned instead.
+ */
+public class FuelBurnPredictor {
+
+    final static Logger logger = LoggerFactory.getLogger(FuelBurnPredictor.class);
+
+    // weight of the newest rate sample, the rest is the previous estimate
+    private final static double rateSmoothing = 0.3;
+    // move the armed staging only when the estimate shifts by more than this
+    private final static long rearmThresholdNanos = 50_000_000L;
+
+    private final StageFuelMonitor monitor;
+    private final long leadTimeMillis;
+    private final ScheduledExecutorService timer;
+
+    private int trackedStage = Integer.MIN_VALUE;
+    private int stagedFrom = Integer.MIN_VALUE;
+    private long lastSampleNanos;
+    private double[] lastAmounts;
+    private double[] rates;
+    private ScheduledFuture<?> armed;
+    private long armedForNanos;
+    // burnout the current estimate expects, 0 while there is none
+    private long predictedEmptyNanos;
+
+    private long predictedStagings;
+    private long reactiveStagings;
+    private long scoredStagings;
+    private double lastErrorMillis;
+    private double absErrorSumMillis;
+    private double lastUnburnedAmount;
+    private double unburnedAmountSum;
+
+    public FuelBurnPredictor(StageFuelMonitor monitor, long leadTimeMillis) {
+        this.monitor = monitor;
+        this.leadTimeMillis = leadTimeMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fuel-burn-predictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        monitor.setDryListener(() -> timer.execute(this::stageDry));
+    }
+
+    /**
+     * Call every polling tick. Reads streamed values only, the staging itself happens on the timer
+     * or, if a tank is already dry, right here.
+     */
+    public synchronized void update() {
+        try {
+            int stage = monitor.getCurrentStage();
+            if (stage != trackedStage) {
+                // staged, by us or by hand, start measuring the new next stage
+                disarm();
+                trackedStage = stage;
+                lastAmounts = null;
+                rates = null;
+                predictedEmptyNanos = 0;
+            }
+            if (stagedFrom == stage) {
+                return;
+            }
+            if (monitor.isNextStageDry()) {
+                stage(false);
+                return;
+            }
+            double[] amounts = monitor.getNextStageAmounts();
+            long now = System.nanoTime();
+            if (amounts.length == 0) {
+                return;
+            }
+            if (lastAmounts != null && now > lastSampleNanos) {
+                double dt = (now - lastSampleNanos) / 1_000_000_000.0;
+                for (int i = 0; i < amounts.length; i++) {
+                    double sample = Math.max(0, (lastAmounts[i] - amounts[i]) / dt);
+                    rates[i] = rates[i] == 0 ? sample : rates[i] + rateSmoothing * (sample - rates[i]);
+                }
+            } else {
+                rates = new double[amounts.length];
+            }
+            lastAmounts = amounts;
+            lastSampleNanos = now;
+
+            double secondsLeft = secondsToEmpty(amounts);
+            if (Double.isInfinite(secondsLeft)) {
+                // nothing burning, e.g. throttled down
+                disarm();
+                predictedEmptyNanos = 0;
+                return;
+            }
+            predictedEmptyNanos = now + (long) (secondsLeft * 1_000_000_000L);
+            long fireAt = predictedEmptyNanos - leadTimeMillis * 1_000_000L;
+            if (fireAt <= now) {
+                stage(true);
+            } else if (armed == null || Math.abs(fireAt - armedForNanos) > rearmThresholdNanos) {
+                disarm();
+                armedForNanos = fireAt;
+                armed = timer.schedule(this::fire, fireAt - now, TimeUnit.NANOSECONDS);
+            }
+        } catch (StreamException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // time until the first tank of the next stage empties at the current rates
+    private double secondsToEmpty(double[] amounts) {
+        double seconds = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < amounts.length; i++) {
+            if (rates[i] > 0) {
+                seconds = Math.min(seconds, amounts[i] / rates[i]);
+            }
+        }
+        return seconds;
+    }
+
+    private synchronized void fire() {
+        armed = null;
+        try {
+            if (monitor.getCurrentStage() == trackedStage && stagedFrom != trackedStage) {
+                stage(true);
+            }
+        } catch (StreamException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // a tank ran dry before the armed staging fired
+    private synchronized void stageDry() {
+        try {
+            if (monitor.getCurrentStage() == trackedStage && stagedFrom != trackedStage && monitor.isNextStageDry()) {
+                stage(false);
+            }
+        } catch (StreamException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void stage(boolean predicted) throws StreamException {
+        disarm();
+        long dryNanos = monitor.getNextStageDryNanos();
+        double unburned = 0;
+        for (double amount : monitor.getNextStageAmounts()) {
+            unburned += amount;
+        }
+        try {
+            monitor.getVessel().getControl().activateNextStage();
+            PartGraph.invalidate(monitor.getVessel());
+        } catch (RPCException e) {
+            e.printStackTrace();
+            return;
+        }
+        stagedFrom = trackedStage;
+        if (predicted) {
+            predictedStagings++;
+        } else {
+            reactiveStagings++;
+        }
+        if (dryNanos == 0) {
+            lastUnburnedAmount = unburned;
+            unburnedAmountSum += unburned;
+            logger.info("Staged from {} {}, dropping {} units of fuel unburned for a {} ms lead",
+                    trackedStage, predicted ? "ahead of burnout" : "after a tank ran dry",
+                    String.format("%.1f", unburned), leadTimeMillis);
+            return;
+        }
+        if (predictedEmptyNanos == 0) {
+            logger.info("Staged from {} after a tank ran dry, no prediction to score", trackedStage);
+            return;
+        }
+        lastErrorMillis = (predictedEmptyNanos - dryNanos) / 1_000_000.0;
+        absErrorSumMillis += Math.abs(lastErrorMillis);
+        scoredStagings++;
+        logger.info("Staged from {} {} ms after a tank ran dry, burnout prediction error {} ms, mean abs error {} ms",
+                trackedStage,
+                String.format("%.0f", (System.nanoTime() - dryNanos) / 1_000_000.0),
+                String.format("%.0f", lastErrorMillis),
+                String.format("%.0f", getMeanAbsErrorMillis()));
+    }
+
+    private void disarm() {
+        if (armed != null) {
+            armed.cancel(false);
+            armed = null;
+        }
+    }
+
+    public synchronized long getPredictedStagings() {
+        return predictedStagings;
+    }
+
+    // stagings left to the dry check because the prediction was too late
+    public synchronized long getReactiveStagings() {
+        return reactiveStagings;
+    }
+
+    public synchronized double getLastErrorMillis() {
+        return lastErrorMillis;
+    }
+
+    // stagings where a tank was seen running dry with a burnout predicted
+    public synchronized long getScoredStagings() {
+        return scoredStagings;
+    }
+
+    public synchronized double getMeanAbsErrorMillis() {
+        return scoredStagings == 0 ? 0 : absErrorSumMillis / scoredStagings;
+    }
+
+    // fuel left in the parts dropped by the last staging that beat the burnout
+    public synchronized double getLastUnburnedAmount() {
+        return lastUnburnedAmount;
+    }
+
+    public synchronized double getUnburnedAmountSum() {
+        return unburnedAmountSum;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+}
@@ -1,11 +1,11 @@
 package com.kleingarn;
 
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.SpaceCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class FuelUtils {
@@ -15,12 +15,7 @@ public class FuelUtils {
     public static List<SpaceCenter.Part> getDecoupleableParts(SpaceCenter.Vessel vessel){
 
         try{
-            List<SpaceCenter.Part> partsWithDecouplers = new ArrayList<>();
-            for(SpaceCenter.Part part : vessel.getParts().getAll()) {
-                if(part.getDecoupleStage() != -1) {
-                    partsWithDecouplers.add(part);
-                }
-            }
+            List<SpaceCenter.Part> partsWithDecouplers = PartGraph.of(vessel).getDecoupleableParts();
             logger.info("Found {} parts with decouplers", partsWithDecouplers.size());
             return partsWithDecouplers;
 
@@ -38,6 +33,7 @@ public class FuelUtils {
             if(areAnyTanksEmpty(vessel, partsWithDecouplers)) {
                 try {
                     vessel.getControl().activateNextStage();
+                    PartGraph.invalidate(vessel);
                 } catch (RPCException e) {
                     e.printStackTrace();
                 }
@@ -47,20 +43,37 @@ public class FuelUtils {
         }
     }
 
+    // same as above from streamed values, no RPCs unless it stages
+    public static void activateNextStageIfFuelEmpty(StageFuelMonitor monitor) {
+        try {
+            if (monitor.isNextStageDry()) {
+                monitor.getVessel().getControl().activateNextStage();
+                PartGraph.invalidate(monitor.getVessel());
+            }
+        } catch (StreamException e) {
+            e.printStackTrace();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+
     public static boolean areAnyTanksEmpty(SpaceCenter.Vessel vessel, List<SpaceCenter.Part> partsWithDecouplers) throws RPCException{
+        // names and decouple stages from the part graph, only the current stage and resources cost RPCs
+        PartGraph graph = PartGraph.of(vessel);
+        int currentStage = vessel.getControl().getCurrentStage();
         for(SpaceCenter.Part part : partsWithDecouplers) {
             // only check the stage higher than the current stage)
             // This will save a few RPCs to the server for part.getResources().getAll()
             // currentStage - 1 = nextStage
-            if(part.getDecoupleStage() >= vessel.getControl().getCurrentStage() - 1) {
+            if(graph.contains(part) && graph.getDecoupleStage(part) >= currentStage - 1) {
                 logger.info("[INFO] Checking if part {} is empty with decouple stage {} and vessel current stage {}",
-                        part.getName(),
-                        part.getDecoupleStage(),
-                        vessel.getControl().getCurrentStage());
+                        graph.getName(part),
+                        graph.getDecoupleStage(part),
+                        currentStage);
                 List<SpaceCenter.Resource> resources = part.getResources().getAll();
                 for (SpaceCenter.Resource resource : resources) {
                     if (resource.getAmount() == 0) {
-                        logger.info("[INFO] Part {} is empty", part.getName());
+                        logger.info("[INFO] Part {} is empty", graph.getName(part));
                         return true;
                     }
                 }
@@ -69,15 +82,9 @@ public class FuelUtils {
         return false;
     }
 
-    private static void printParts(List<SpaceCenter.Part> partsList) {
-
-        partsList.stream().forEach(
-            p -> {
-                try {
-                logger.info("Part name: {}, Stage: {}", p.getName(), p.getDecoupleStage());
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-            });
+    private static void printParts(PartGraph graph, List<SpaceCenter.Part> partsList) {
+        for (SpaceCenter.Part p : partsList) {
+            logger.info("Part name: {}, Stage: {}", graph.getName(p), graph.getDecoupleStage(p));
+        }
     }
 }
@@ -0,0 +1,236 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Several connections to the same kRPC server. Calls on one connection are serialized on its socket,
+ * so follower vessels are pinned to the least loaded connection and get a vessel handle bound to it.
+ * Every RPC made through a pinned handle, and through the Control / AutoPilot fetched from it,
+ * goes over that follower's own connection.
+ */
+public class KrpcConnectionPool implements Closeable {
+
+    final static Logger logger = LoggerFactory.getLogger(KrpcConnectionPool.class);
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final List<SpaceCenter> spaceCenters = new ArrayList<>();
+    private final int[] pinnedCount;
+
+    // remote objects compare by id, so the handle from the main connection finds its pinned twin
+    private final Map<SpaceCenter.Vessel, SpaceCenter.Vessel> pinned = new ConcurrentHashMap<>();
+    private final Map<SpaceCenter.Vessel, Integer> pinnedConnection = new ConcurrentHashMap<>();
+
+    private KrpcConnectionPool(List<Connection> connections) {
+        this.connections.addAll(connections);
+        for (Connection connection : connections) {
+            spaceCenters.add(SpaceCenter.newInstance(connection));
+        }
+        this.pinnedCount = new int[connections.size()];
+    }
+
+    public static KrpcConnectionPool newInstance(String name, int size) throws IOException {
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            connections.add(Connection.newInstance(name + " " + i));
+        }
+        logger.info("Opened {} kRPC connections for {}", size, name);
+        return new KrpcConnectionPool(connections);
+    }
+
+    public static KrpcConnectionPool newInstance(String name, int size, String address, int rpcPort, int streamPort) throws IOException {
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            connections.add(Connection.newInstance(name + " " + i, address, rpcPort, streamPort));
+        }
+        logger.info("Opened {} kRPC connections for {} to {}", size, name, address);
+        return new KrpcConnectionPool(connections);
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public Connection getConnection(int index) {
+        return connections.get(index);
+    }
+
+    public SpaceCenter getSpaceCenter(int index) {
+        return spaceCenters.get(index);
+    }
+
+    /**
+     * Returns the handle for this vessel on its pinned connection, pinning it to the least loaded
+     * connection on first use. Throws IllegalArgumentException if the vessel no longer exists.
+     */
+    public SpaceCenter.Vessel pin(SpaceCenter.Vessel vessel) throws RPCException {
+        SpaceCenter.Vessel handle = pinned.get(vessel);
+        if (handle != null) {
+            return handle;
+        }
+        int index = leastLoaded();
+        handle = findVessel(spaceCenters.get(index).getVessels(), vessel);
+        return remember(vessel, handle, index);
+    }
+
+    /**
+     * Pins a whole squadron, spreading the vessels evenly with one getVessels call per connection.
+     */
+    public void pinAll(Collection<SpaceCenter.Vessel> vessels) throws RPCException {
+        List<List<SpaceCenter.Vessel>> vesselsByConnection = new ArrayList<>();
+        for (int i = 0; i < spaceCenters.size(); i++) {
+            vesselsByConnection.add(null);
+        }
+        for (SpaceCenter.Vessel vessel : vessels) {
+            if (pinned.containsKey(vessel)) {
+                continue;
+            }
+            int index = leastLoaded();
+            if (vesselsByConnection.get(index) == null) {
+                vesselsByConnection.set(index, spaceCenters.get(index).getVessels());
+            }
+            try {
+                remember(vessel, findVessel(vesselsByConnection.get(index), vessel), index);
+            } catch (IllegalArgumentException e) {
+                logger.error("Vessel {} missing, not pinned", vessel);
+            }
+        }
+        logPinning();
+    }
+
+    /**
+     * Pins vessels to one given connection, e.g. to give a squadron wing a socket of its own.
+     * Costs one getVessels call. Vessels already pinned elsewhere, e.g. by pinAll, are moved; handles
+     * fetched before the move, like a FollowerControlMirror's, still use the old connection.
+     */
+    public void pinTo(Collection<SpaceCenter.Vessel> vessels, int index) throws RPCException {
+        List<SpaceCenter.Vessel> serverVessels = spaceCenters.get(index).getVessels();
+        int moved = 0;
+        for (SpaceCenter.Vessel vessel : vessels) {
+            Integer current = pinnedConnection.get(vessel);
+            if (current != null) {
+                if (current == index) {
+                    continue;
+                }
+                unpin(vessel);
+                moved++;
+            }
+            try {
+                remember(vessel, findVessel(serverVessels, vessel), index);
+            } catch (IllegalArgumentException e) {
+                logger.error("Vessel {} missing, not pinned", vessel);
+            }
+        }
+        if (moved > 0) {
+            logger.info("Moved {} vessels to connection {}", moved, index);
+        }
+    }
+
+    /**
+     * Spreads vessels round robin over the connections for one-off parallel work, without pinning
+     * them. Costs one getVessels call per connection. Vessels that no longer exist are left out.
+     */
+    public Map<SpaceCenter.Vessel, SpaceCenter.Vessel> spread(Collection<SpaceCenter.Vessel> vessels) throws RPCException {
+        List<List<SpaceCenter.Vessel>> vesselsByConnection = new ArrayList<>();
+        for (SpaceCenter spaceCenter : spaceCenters) {
+            vesselsByConnection.add(spaceCenter.getVessels());
+        }
+        Map<SpaceCenter.Vessel, SpaceCenter.Vessel> handles = new HashMap<>();
+        int index = 0;
+        for (SpaceCenter.Vessel vessel : vessels) {
+            try {
+                handles.put(vessel, findVessel(vesselsByConnection.get(index), vessel));
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            index = (index + 1) % vesselsByConnection.size();
+        }
+        return handles;
+    }
+
+    /**
+     * The vessel's handle on every connection, in connection order, without pinning it. Costs one
+     * getVessels call per connection. Throws IllegalArgumentException if the vessel no longer exists.
+     */
+    public List<SpaceCenter.Vessel> onEveryConnection(SpaceCenter.Vessel vessel) throws RPCException {
+        List<SpaceCenter.Vessel> handles = new ArrayList<>(spaceCenters.size());
+        for (SpaceCenter spaceCenter : spaceCenters) {
+            handles.add(findVessel(spaceCenter.getVessels(), vessel));
+        }
+        return handles;
+    }
+
+    public void unpin(SpaceCenter.Vessel vessel) {
+        Integer index = pinnedConnection.remove(vessel);
+        if (index != null) {
+            pinned.remove(vessel);
+            synchronized (pinnedCount) {
+                pinnedCount[index]--;
+            }
+        }
+    }
+
+    public void logPinning() {
+        synchronized (pinnedCount) {
+            for (int i = 0; i < pinnedCount.length; i++) {
+                logger.info("Connection {} has {} vessels pinned", i, pinnedCount[i]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Connection connection : connections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private SpaceCenter.Vessel remember(SpaceCenter.Vessel vessel, SpaceCenter.Vessel handle, int index) {
+        SpaceCenter.Vessel existing = pinned.putIfAbsent(vessel, handle);
+        if (existing != null) {
+            return existing;
+        }
+        pinnedConnection.put(vessel, index);
+        synchronized (pinnedCount) {
+            pinnedCount[index]++;
+        }
+        return handle;
+    }
+
+    private int leastLoaded() {
+        synchronized (pinnedCount) {
+            int best = 0;
+            for (int i = 1; i < pinnedCount.length; i++) {
+                if (pinnedCount[i] < pinnedCount[best]) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+
+    private static SpaceCenter.Vessel findVessel(List<SpaceCenter.Vessel> vessels, SpaceCenter.Vessel vessel) {
+        for (SpaceCenter.Vessel candidate : vessels) {
+            if (candidate.equals(vessel)) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("No such vessel " + vessel);
+    }
+}
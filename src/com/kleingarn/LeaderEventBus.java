@@ -0,0 +1,292 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Pushes the leader's discrete controls to the followers when they change instead of on the next
+ * polling tick. Gear, brakes, lights, SAS, SAS mode, throttle, stage and the ten action groups are
+ * streamed with callbacks; each change becomes a typed LeaderEvent and is handed to the listeners
+ * on a single dispatcher thread, so events arrive in order and the stream thread never waits on RPCs.
+ *
+ * propagateTo() adds a listener that writes the chosen event types to every follower through its
+ * FollowerControlMirror, so the polling loop's own writes of the same value are suppressed and
+ * it stays a backstop for any event that got lost. Scripts that fly followers differently from the
+ * leader, e.g. their own throttle or SAS, leave those types out.
+ */
+public class LeaderEventBus {
+
+    final static Logger logger = LoggerFactory.getLogger(LeaderEventBus.class);
+
+    // throttle streams every small change, only publish moves larger than this
+    private final static float throttleEpsilon = 0.01f;
+
+    public enum EventType {
+        GEAR, BRAKES, LIGHTS, SAS, SAS_MODE, THROTTLE, STAGE, ACTION_GROUP
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onEvent(LeaderEvent event) throws RPCException;
+    }
+
+    private final Connection connection;
+    // replaced by repoint() when the squadron fails over to a new leader
+    private volatile SpaceCenter.Vessel leader;
+    private final List<Stream<?>> streams = new CopyOnWriteArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // last published value per type and action group, callbacks can repeat a value
+    private final Map<String, Object> lastValues = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher;
+    // one per propagateTo, shut down with the bus
+    private final List<SquadronExecutor> propagators = new CopyOnWriteArrayList<>();
+
+    public LeaderEventBus(Connection connection, SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        this.connection = connection;
+        this.dispatcher = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "leader-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+        open(leader);
+    }
+
+    private void open(SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        this.leader = leader;
+        SpaceCenter.Control leadControl = leader.getControl();
+        Stream<Boolean> gear = connection.addStream(leadControl, "getGear");
+        watch(gear, value -> publish(EventType.GEAR, -1, value));
+        Stream<Boolean> brakes = connection.addStream(leadControl, "getBrakes");
+        watch(brakes, value -> publish(EventType.BRAKES, -1, value));
+        Stream<Boolean> lights = connection.addStream(leadControl, "getLights");
+        watch(lights, value -> publish(EventType.LIGHTS, -1, value));
+        Stream<Boolean> sas = connection.addStream(leadControl, "getSAS");
+        watch(sas, value -> publish(EventType.SAS, -1, value));
+        Stream<SpaceCenter.SASMode> sasMode = connection.addStream(leadControl, "getSASMode");
+        watch(sasMode, value -> publish(EventType.SAS_MODE, -1, value));
+        Stream<Float> throttle = connection.addStream(leadControl, "getThrottle");
+        watch(throttle, value -> {
+            Float last = (Float) lastValues.get(key(EventType.THROTTLE, -1));
+            if (last == null || Math.abs(last - value) > throttleEpsilon) {
+                publish(EventType.THROTTLE, -1, value);
+            }
+        });
+        Stream<Integer> stage = connection.addStream(leadControl, "getCurrentStage");
+        watch(stage, value -> publish(EventType.STAGE, -1, value));
+        for (int i = 0; i < ActionGroupSync.actionGroupCount; i++) {
+            int group = i;
+            Stream<Boolean> actionGroup = connection.addStream(leadControl, "getActionGroup", group);
+            watch(actionGroup, value -> publish(EventType.ACTION_GROUP, group, value));
+        }
+        logger.info("Listening for control changes on leader {} with {} streams", leader, streams.size());
+    }
+
+    /**
+     * Moves the streams over to a new leader, e.g. from a LeaderHealthMonitor failover listener.
+     * The new leader's current controls are published as events, so followers pick them up at once.
+     */
+    public synchronized void repoint(SpaceCenter.Vessel newLeader) throws RPCException, StreamException {
+        removeStreams();
+        lastValues.clear();
+        open(newLeader);
+    }
+
+    private <T> void watch(Stream<T> stream, Consumer<T> callback) throws RPCException {
+        stream.addCallback(value -> {
+            if (value != null) {
+                callback.accept(value);
+            }
+        });
+        stream.start();
+        streams.add(stream);
+    }
+
+    // runs on the stream thread, no RPCs here
+    private void publish(EventType type, int actionGroup, Object value) {
+        Object last = lastValues.put(key(type, actionGroup), value);
+        if (Objects.equals(last, value)) {
+            return;
+        }
+        LeaderEvent event = new LeaderEvent(type, actionGroup, value, System.nanoTime());
+        dispatcher.execute(() -> dispatch(event));
+    }
+
+    private void dispatch(LeaderEvent event) {
+        logger.info("Leader event {}", event);
+        for (Listener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RPCException e) {
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                logger.error("Listener failed on {}", event);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static String key(EventType type, int actionGroup) {
+        return type == EventType.ACTION_GROUP ? type.name() + actionGroup : type.name();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Applies events of the given types to all followers of the squadron, in parallel on an executor
+     * of the bus's own, so event ticks and the polling loop's ticks don't skip each other's vessels.
+     * STAGE is never applied, staging is left to the caller, e.g. a StagingSynchroniser.
+     */
+    public Listener propagateTo(Squadron squad, long tickTimeoutMillis, Set<EventType> types) {
+        Set<EventType> applied = EnumSet.copyOf(types);
+        applied.remove(EventType.STAGE);
+        SquadronExecutor executor = SquadronExecutor.forSquadron(squad, tickTimeoutMillis);
+        propagators.add(executor);
+        Listener propagator = event -> {
+            if (!applied.contains(event.getType())) {
+                return;
+            }
+            executor.runTick(squad, v -> {
+                if (!v.equals(leader)) {
+                    apply(FollowerControlMirror.of(v), event);
+                }
+            });
+        };
+        addListener(propagator);
+        logger.info("Propagating {} leader events to {}", applied, squad.getSquadronName());
+        return propagator;
+    }
+
+    private static void apply(FollowerControlMirror mirror, LeaderEvent event) throws RPCException {
+        switch (event.getType()) {
+            case GEAR:
+                mirror.setGear(event.getBoolean());
+                break;
+            case BRAKES:
+                mirror.setBrakes(event.getBoolean());
+                break;
+            case LIGHTS:
+                mirror.setLights(event.getBoolean());
+                break;
+            case SAS:
+                mirror.setSAS(event.getBoolean());
+                break;
+            case SAS_MODE:
+                mirror.setSASMode(event.getSASMode());
+                break;
+            case THROTTLE:
+                mirror.setThrottle(event.getFloat());
+                break;
+            case ACTION_GROUP:
+                mirror.setActionGroup(event.getActionGroup(), event.getBoolean());
+                break;
+            default:
+                break;
+        }
+    }
+
+    public synchronized void close() {
+        dispatcher.shutdownNow();
+        for (SquadronExecutor propagator : propagators) {
+            propagator.shutdown();
+        }
+        removeStreams();
+    }
+
+    // one by one, an old leader that is gone can fail some removes
+    private void removeStreams() {
+        for (Stream<?> stream : streams) {
+            try {
+                stream.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+        streams.clear();
+    }
+
+    /**
+     * A single change of one leader control.
+     */
+    public static class LeaderEvent {
+
+        private final EventType type;
+        private final int actionGroup;
+        private final Object value;
+        private final long timestampNanos;
+
+        LeaderEvent(EventType type, int actionGroup, Object value, long timestampNanos) {
+            this.type = type;
+            this.actionGroup = actionGroup;
+            this.value = value;
+            this.timestampNanos = timestampNanos;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        // group number for ACTION_GROUP events, -1 otherwise
+        public int getActionGroup() {
+            return actionGroup;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        // GEAR, BRAKES, LIGHTS, SAS and ACTION_GROUP
+        public boolean getBoolean() {
+            return (Boolean) value;
+        }
+
+        // THROTTLE
+        public float getFloat() {
+            return (Float) value;
+        }
+
+        // STAGE
+        public int getInt() {
+            return (Integer) value;
+        }
+
+        // SAS_MODE
+        public SpaceCenter.SASMode getSASMode() {
+            return (SpaceCenter.SASMode) value;
+        }
+
+        // when the stream callback saw the change
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        @Override
+        public String toString() {
+            return type == EventType.ACTION_GROUP
+                    ? type + " " + actionGroup + " = " + value
+                    : type + " = " + value;
+        }
+    }
+}
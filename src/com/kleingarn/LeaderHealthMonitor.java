@@ -0,0 +1,322 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the squad leader and hands the squadron to a successor as soon as the leader is gone.
+ * The leader's mission elapsed time and the universal time are streamed; check() reads them once
+ * per tick without an RPC and declares the leader lost when its stream fails, or when UT moved on
+ * while its MET did not and a direct getMET, made on that same tick, confirms it. The two streams
+ * update separately, so a stalled sample alone proves nothing, but the confirming RPC is only paid
+ * on ticks that look stalled. A loop that catches IllegalArgumentException on the leader can report
+ * it too. Either way the loss is acted on within the tick it is seen.
+ *
+ * The successor is the first vessel of the configured priority list still in the squadron, then
+ * the vessel closest to the old leader's last streamed position. The squadron and its
+ * LeaderSnapshot are re-pointed in place, followers never see an empty squadron. Anything else that
+ * streams the leader, like ActionGroupSync, LeaderEventBus, FormationController or
+ * StagingSynchroniser, is handed to repointOnFailover(). With no vessel left to lead the monitor
+ * stops checking.
+ */
+public class LeaderHealthMonitor {
+
+    final static Logger logger = LoggerFactory.getLogger(LeaderHealthMonitor.class);
+
+    @FunctionalInterface
+    public interface FailoverListener {
+        void leaderChanged(Squadron squad, SpaceCenter.Vessel oldLeader, SpaceCenter.Vessel newLeader) throws RPCException;
+    }
+
+    /**
+     * A component bound to the leader that can move over to its successor, e.g. actionGroupSync::repoint.
+     */
+    @FunctionalInterface
+    public interface LeaderBound {
+        void repoint(SpaceCenter.Vessel newLeader) throws RPCException, StreamException;
+    }
+
+    private final Connection connection;
+    private final SpaceCenter spaceCenter;
+    private final Squadron squad;
+    private final LeaderSnapshot leaderSnapshot;
+    // vessel names, most preferred first
+    private final List<String> priority;
+    private final List<FailoverListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Stream<Double> universalTime;
+    private SpaceCenter.ReferenceFrame bodyFrame;
+    private Stream<Double> leaderMET;
+    private Stream<Triplet<Double, Double, Double>> leaderPosition;
+
+    private double lastUT;
+    private double lastMET;
+    private Triplet<Double, Double, Double> lastPosition;
+    private long lastHealthyNanos;
+    private volatile Exception reportedLoss;
+    private boolean leaderless;
+
+    private long failovers;
+    private double lastFailoverMillis;
+    private double maxFailoverMillis;
+    private double lastDetectionMillis;
+
+    public LeaderHealthMonitor(Connection connection, SpaceCenter spaceCenter, Squadron squad,
+                               LeaderSnapshot leaderSnapshot, List<String> priority) throws RPCException, StreamException {
+        this.connection = connection;
+        this.spaceCenter = spaceCenter;
+        this.squad = squad;
+        this.leaderSnapshot = leaderSnapshot;
+        this.priority = new ArrayList<>(priority);
+        this.universalTime = connection.addStream(SpaceCenter.class, "getUT");
+        watch(squad.getSquadLeader());
+        logger.info("Watching leader of {}, successor priority {}", squad.getSquadronName(), this.priority);
+    }
+
+    public LeaderHealthMonitor(Connection connection, SpaceCenter spaceCenter, Squadron squad,
+                               LeaderSnapshot leaderSnapshot) throws RPCException, StreamException {
+        this(connection, spaceCenter, squad, leaderSnapshot, Collections.<String>emptyList());
+    }
+
+    private void watch(SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        bodyFrame = leader.getOrbit().getBody().getReferenceFrame();
+        leaderMET = connection.addStream(leader, "getMET");
+        leaderPosition = connection.addStream(leader, "position", bodyFrame);
+        lastUT = universalTime.get();
+        lastMET = leaderMET.get();
+        lastPosition = leaderPosition.get();
+        lastHealthyNanos = System.nanoTime();
+    }
+
+    public void addFailoverListener(FailoverListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Re-points the components to the new leader on every failover, in the order given, right after
+     * the squadron and its LeaderSnapshot.
+     */
+    public void repointOnFailover(LeaderBound... components) {
+        for (LeaderBound component : components) {
+            addFailoverListener((s, oldLeader, newLeader) -> {
+                try {
+                    component.repoint(newLeader);
+                } catch (StreamException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks the leader as lost, e.g. from a catch of IllegalArgumentException on a leader RPC.
+     * The failover itself happens on the next check().
+     */
+    public void reportLeaderLost(Exception cause) {
+        reportedLoss = cause;
+    }
+
+    /**
+     * Call once per tick before refreshing the leader snapshot. Reads streamed values only while the
+     * leader is healthy; returns true when it failed over to a new leader on this call.
+     */
+    public synchronized boolean check() {
+        if (leaderless) {
+            return false;
+        }
+        Exception cause = reportedLoss;
+        if (cause == null) {
+            try {
+                double ut = universalTime.get();
+                double met = leaderMET.get();
+                Triplet<Double, Double, Double> position = leaderPosition.get();
+                // a vessel on the launch pad has MET 0 and doesn't count it up yet
+                if (ut > lastUT && met > 0 && met == lastMET) {
+                    lastUT = ut;
+                    cause = confirmLost(ut);
+                } else {
+                    if (position != null) {
+                        lastPosition = position;
+                    }
+                    if (ut > lastUT || met != lastMET) {
+                        lastHealthyNanos = System.nanoTime();
+                    }
+                    lastUT = ut;
+                    lastMET = met;
+                }
+            } catch (StreamException | IllegalArgumentException e) {
+                cause = e;
+            }
+        }
+        if (cause == null) {
+            return false;
+        }
+        reportedLoss = null;
+        return failover(cause);
+    }
+
+    // one direct RPC, null while the leader still answers with a moving MET or can't be asked
+    private Exception confirmLost(double ut) {
+        try {
+            double met = squad.getSquadLeader().getMET();
+            if (met != lastMET) {
+                logger.debug("Leader MET stream lagged UT, leader is fine");
+                lastMET = met;
+                lastHealthyNanos = System.nanoTime();
+                return null;
+            }
+            return new IllegalStateException("Leader MET stopped at " + met + " while UT reached " + ut);
+        } catch (RPCException e) {
+            e.printStackTrace();
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    private boolean failover(Exception cause) {
+        long start = System.nanoTime();
+        lastDetectionMillis = (start - lastHealthyNanos) / 1_000_000.0;
+        SpaceCenter.Vessel oldLeader = squad.getSquadLeader();
+        logger.error("Leader {} of {} lost: {}", oldLeader, squad.getSquadronName(), cause.getMessage());
+        squad.evict(oldLeader, cause);
+        closeStreams();
+
+        SpaceCenter.Vessel newLeader = elect(oldLeader);
+        if (newLeader == null) {
+            logger.error("No vessel left to lead {}, stopped watching", squad.getSquadronName());
+            leaderless = true;
+            return false;
+        }
+        squad.setSquadLeader(newLeader);
+        try {
+            // the new leader is flown, not followed
+            FollowerControlMirror.of(newLeader).getAutoPilot().disengage();
+            FollowerControlMirror.forget(newLeader);
+            spaceCenter.setActiveVessel(newLeader);
+            leaderSnapshot.repoint(newLeader);
+            watch(newLeader);
+        } catch (RPCException | StreamException e) {
+            // without streams on the new leader every check would fail over again
+            logger.error("Could not watch new leader of {}, stopped watching", squad.getSquadronName());
+            e.printStackTrace();
+            leaderless = true;
+        }
+
+        long end = System.nanoTime();
+        failovers++;
+        lastFailoverMillis = (end - start) / 1_000_000.0;
+        maxFailoverMillis = Math.max(maxFailoverMillis, lastFailoverMillis);
+        logger.info("Leader of {} is now {}, failover took {} ms, detected {} ms after its last sign of life",
+                squad.getSquadronName(), VesselIndex.of(spaceCenter).getName(newLeader),
+                String.format("%.1f", lastFailoverMillis),
+                String.format("%.1f", lastDetectionMillis));
+
+        for (FailoverListener listener : listeners) {
+            try {
+                listener.leaderChanged(squad, oldLeader, newLeader);
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    // configured priority first, then distance to where the old leader was last seen, squadron order breaks ties
+    private SpaceCenter.Vessel elect(SpaceCenter.Vessel oldLeader) {
+        List<SpaceCenter.Vessel> candidates = new ArrayList<>(squad.getSquadronVessels());
+        candidates.remove(oldLeader);
+        VesselIndex index = VesselIndex.of(spaceCenter);
+        for (String name : priority) {
+            for (SpaceCenter.Vessel candidate : candidates) {
+                if (name.equals(index.getName(candidate))) {
+                    return candidate;
+                }
+            }
+        }
+
+        SpaceCenter.Vessel closest = null;
+        double closestDistance = Double.MAX_VALUE;
+        for (SpaceCenter.Vessel candidate : candidates) {
+            try {
+                Triplet<Double, Double, Double> position = FollowerControlMirror.of(candidate).getVessel().position(bodyFrame);
+                double distance = lastPosition == null ? 0 : distance(position, lastPosition);
+                if (distance < closestDistance) {
+                    closest = candidate;
+                    closestDistance = distance;
+                }
+            } catch (RPCException e) {
+                e.printStackTrace();
+            } catch (IllegalArgumentException e) {
+                squad.evict(candidate, e);
+            }
+        }
+        return closest;
+    }
+
+    private static double distance(Triplet<Double, Double, Double> a, Triplet<Double, Double, Double> b) {
+        double dx = a.getValue0() - b.getValue0();
+        double dy = a.getValue1() - b.getValue1();
+        double dz = a.getValue2() - b.getValue2();
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private void closeStreams() {
+        // the leader is gone, removing its streams can fail
+        for (Stream<?> stream : new Stream<?>[] {leaderMET, leaderPosition}) {
+            if (stream == null) {
+                continue;
+            }
+            try {
+                stream.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+        leaderMET = null;
+        leaderPosition = null;
+    }
+
+    // true once no vessel was left to take over
+    public synchronized boolean isLeaderless() {
+        return leaderless;
+    }
+
+    public synchronized long getFailovers() {
+        return failovers;
+    }
+
+    // time from detection until the squadron followed the new leader
+    public synchronized double getLastFailoverMillis() {
+        return lastFailoverMillis;
+    }
+
+    public synchronized double getMaxFailoverMillis() {
+        return maxFailoverMillis;
+    }
+
+    // time from the leader's last sign of life until the loss was detected
+    public synchronized double getLastDetectionMillis() {
+        return lastDetectionMillis;
+    }
+
+    public synchronized void close() {
+        closeStreams();
+        try {
+            universalTime.remove();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+}
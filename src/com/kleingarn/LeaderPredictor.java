@@ -0,0 +1,229 @@
+package com.kleingarn;
+
+import org.javatuples.Triplet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Extrapolates the leader's attitude to the time a follower's command will actually be applied.
+ * A short ring buffer of timestamped pitch, roll and heading samples, with the angular rates
+ * between them, is fed from the LeaderSnapshot frame each tick; predictions extrapolate the newest
+ * sample along the rates measured across the buffer.
+ *
+ * Every prediction is scored once a leader sample at or after its target time arrives, next to the
+ * error plain copying of the frame would have had, so the two can be compared in the logs.
+ */
+public class LeaderPredictor {
+
+    final static Logger logger = LoggerFactory.getLogger(LeaderPredictor.class);
+
+    // never extrapolate further than this, a stalled loop should fall back to copying
+    private final static long maxHorizonNanos = 500_000_000L;
+    private final static int maxPendingPredictions = 4096;
+    private final static long statsIntervalNanos = 30_000_000_000L;
+
+    // ring buffer, index of the newest sample is (next - 1) mod capacity
+    private final long[] timestamps;
+    private final double[] pitch;
+    private final double[] roll;
+    private final double[] heading;
+    private final double[] pitchRate;
+    private final double[] rollRate;
+    private final double[] headingRate;
+    private int next;
+    private int size;
+
+    private LeaderSnapshot.Frame latest;
+
+    private final ArrayDeque<Prediction> pending = new ArrayDeque<>();
+    private long scored;
+    private double predictedErrorSum;
+    private double copiedErrorSum;
+    private long lastStatsNanos = System.nanoTime();
+
+    public LeaderPredictor(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Need at least two samples to measure rates, got " + capacity);
+        }
+        timestamps = new long[capacity];
+        pitch = new double[capacity];
+        roll = new double[capacity];
+        heading = new double[capacity];
+        pitchRate = new double[capacity];
+        rollRate = new double[capacity];
+        headingRate = new double[capacity];
+    }
+
+    /**
+     * Adds the tick's leader frame to the buffer and scores predictions whose target time has passed.
+     */
+    public synchronized void record(LeaderSnapshot.Frame frame) {
+        if (latest != null && frame.getTimestampNanos() <= latest.getTimestampNanos()) {
+            return;
+        }
+        int capacity = timestamps.length;
+        int newest = next;
+        timestamps[newest] = frame.getTimestampNanos();
+        pitch[newest] = frame.getPitch();
+        roll[newest] = frame.getRoll();
+        heading[newest] = frame.getHeading();
+        if (size > 0) {
+            // rates across the whole buffer, smoother than the last step alone
+            // once full, the newest sample has overwritten the oldest, the next slot holds the oldest left
+            int oldest = size < capacity ? 0 : (newest + 1) % capacity;
+            double dt = (timestamps[newest] - timestamps[oldest]) / 1_000_000_000.0;
+            if (dt > 0) {
+                pitchRate[newest] = (pitch[newest] - pitch[oldest]) / dt;
+                rollRate[newest] = AngleUtils.delta(roll[newest], roll[oldest]) / dt;
+                headingRate[newest] = AngleUtils.delta(heading[newest], heading[oldest]) / dt;
+            }
+        }
+        next = (next + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+
+        LeaderSnapshot.Frame previous = latest;
+        latest = frame;
+        if (previous != null) {
+            score(previous, frame);
+        }
+    }
+
+    /**
+     * The leader frame extrapolated to latencyMillis from now, e.g. a follower's average RPC time.
+     * Returns the latest frame unchanged until two samples have been recorded.
+     */
+    public synchronized LeaderSnapshot.Frame predict(double latencyMillis) {
+        if (latest == null) {
+            return null;
+        }
+        if (size < 2) {
+            return latest;
+        }
+        long target = System.nanoTime() + (long) (latencyMillis * 1_000_000);
+        int newest = (next - 1 + timestamps.length) % timestamps.length;
+        long horizon = Math.min(Math.max(target - timestamps[newest], 0), maxHorizonNanos);
+        double seconds = horizon / 1_000_000_000.0;
+
+        double predictedPitch = clamp(pitch[newest] + pitchRate[newest] * seconds, -90, 90);
+        double predictedRoll = AngleUtils.wrap180(roll[newest] + rollRate[newest] * seconds);
+        double predictedHeading = AngleUtils.wrap360(heading[newest] + headingRate[newest] * seconds);
+
+        if (pending.size() >= maxPendingPredictions) {
+            pending.removeFirst();
+        }
+        pending.addLast(new Prediction(timestamps[newest] + horizon,
+                predictedPitch, predictedRoll, predictedHeading,
+                latest.getPitch(), latest.getRoll(), latest.getHeading()));
+
+        return new LeaderSnapshot.Frame(
+                timestamps[newest] + horizon,
+                (float) predictedPitch,
+                (float) predictedRoll,
+                (float) predictedHeading,
+                direction(predictedPitch, predictedHeading),
+                latest.getThrottle(),
+                latest.getGear(),
+                latest.getBrakes(),
+                latest.getSAS(),
+                latest.getSASMode(),
+                latest.getLights(),
+                latest.getCurrentStage());
+    }
+
+    // compares predictions that targeted a time between the two samples with the interpolated actual
+    private void score(LeaderSnapshot.Frame previous, LeaderSnapshot.Frame current) {
+        long t0 = previous.getTimestampNanos();
+        long t1 = current.getTimestampNanos();
+        Iterator<Prediction> it = pending.iterator();
+        while (it.hasNext()) {
+            Prediction p = it.next();
+            if (p.targetNanos > t1) {
+                continue;
+            }
+            it.remove();
+            if (p.targetNanos < t0) {
+                continue;
+            }
+            double f = (p.targetNanos - t0) / (double) (t1 - t0);
+            double actualPitch = previous.getPitch() + (current.getPitch() - previous.getPitch()) * f;
+            double actualRoll = previous.getRoll() + AngleUtils.delta(current.getRoll(), previous.getRoll()) * f;
+            double actualHeading = previous.getHeading() + AngleUtils.delta(current.getHeading(), previous.getHeading()) * f;
+
+            predictedErrorSum += attitudeError(p.pitch, p.roll, p.heading, actualPitch, actualRoll, actualHeading);
+            copiedErrorSum += attitudeError(p.copiedPitch, p.copiedRoll, p.copiedHeading, actualPitch, actualRoll, actualHeading);
+            scored++;
+        }
+        if (t1 - lastStatsNanos >= statsIntervalNanos) {
+            lastStatsNanos = t1;
+            logStats();
+        }
+    }
+
+    /**
+     * Mean absolute pitch, roll and heading error of predictions, in degrees.
+     */
+    public synchronized double getPredictedErrorDegrees() {
+        return scored == 0 ? 0 : predictedErrorSum / scored;
+    }
+
+    /**
+     * Mean absolute error the same commands would have had copying the frame, in degrees.
+     */
+    public synchronized double getCopiedErrorDegrees() {
+        return scored == 0 ? 0 : copiedErrorSum / scored;
+    }
+
+    public synchronized long getScoredPredictions() {
+        return scored;
+    }
+
+    public synchronized void logStats() {
+        logger.info("Leader prediction error {} deg vs copying {} deg over {} commands",
+                String.format("%.3f", getPredictedErrorDegrees()),
+                String.format("%.3f", getCopiedErrorDegrees()),
+                scored);
+    }
+
+    // mean of the absolute per-axis errors
+    private static double attitudeError(double pitch, double roll, double heading,
+                                        double actualPitch, double actualRoll, double actualHeading) {
+        return (Math.abs(pitch - actualPitch)
+                + Math.abs(AngleUtils.delta(roll, actualRoll))
+                + Math.abs(AngleUtils.delta(heading, actualHeading))) / 3;
+    }
+
+    // surface reference frame, x up, y north, z east
+    static Triplet<Double, Double, Double> direction(double pitchDegrees, double headingDegrees) {
+        double p = Math.toRadians(pitchDegrees);
+        double h = Math.toRadians(headingDegrees);
+        return new Triplet<>(Math.sin(p), Math.cos(p) * Math.cos(h), Math.cos(p) * Math.sin(h));
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static class Prediction {
+        final long targetNanos;
+        final double pitch;
+        final double roll;
+        final double heading;
+        final double copiedPitch;
+        final double copiedRoll;
+        final double copiedHeading;
+
+        Prediction(long targetNanos, double pitch, double roll, double heading,
+                   double copiedPitch, double copiedRoll, double copiedHeading) {
+            this.targetNanos = targetNanos;
+            this.pitch = pitch;
+            this.roll = roll;
+            this.heading = heading;
+            this.copiedPitch = copiedPitch;
+            this.copiedRoll = copiedRoll;
+            this.copiedHeading = copiedHeading;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the squad leader's flight telemetry and control state and publishes an immutable
+ * {@link Frame} once per tick. Followers read the frame instead of calling the leader, so the
+ * leader costs one set of streams no matter how many vessels are in the squadron.
+ */
+public class LeaderSnapshot {
+
+    final static Logger logger = LoggerFactory.getLogger(LeaderSnapshot.class);
+
+    private final Connection connection;
+    // replaced by repoint() when the squadron fails over to a new leader
+    private volatile SpaceCenter.Vessel leader;
+
+    // flight telemetry, surface reference frame
+    private Stream<Float> pitch;
+    private Stream<Float> roll;
+    private Stream<Float> heading;
+    private Stream<Triplet<Double, Double, Double>> direction;
+
+    // control state
+    private Stream<Float> throttle;
+    private Stream<Boolean> gear;
+    private Stream<Boolean> brakes;
+    private Stream<Boolean> sas;
+    private Stream<SpaceCenter.SASMode> sasMode;
+    private Stream<Boolean> lights;
+    private Stream<Integer> currentStage;
+
+    private volatile Frame current;
+
+    public LeaderSnapshot(Connection connection, SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        this.connection = connection;
+        open(leader);
+        refresh();
+    }
+
+    private void open(SpaceCenter.Vessel leader) throws RPCException, StreamException {
+        this.leader = leader;
+
+        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        SpaceCenter.Control leadControl = leader.getControl();
+
+        this.pitch = connection.addStream(leadFlightTelemetry, "getPitch");
+        this.roll = connection.addStream(leadFlightTelemetry, "getRoll");
+        this.heading = connection.addStream(leadFlightTelemetry, "getHeading");
+        this.direction = connection.addStream(leadFlightTelemetry, "getDirection");
+
+        this.throttle = connection.addStream(leadControl, "getThrottle");
+        this.gear = connection.addStream(leadControl, "getGear");
+        this.brakes = connection.addStream(leadControl, "getBrakes");
+        this.sas = connection.addStream(leadControl, "getSAS");
+        this.sasMode = connection.addStream(leadControl, "getSASMode");
+        this.lights = connection.addStream(leadControl, "getLights");
+        this.currentStage = connection.addStream(leadControl, "getCurrentStage");
+
+        logger.info("Opened leader snapshot streams for {}", leader.getName());
+    }
+
+    /**
+     * Moves the streams over to a new leader, e.g. after the old one was destroyed. Followers keep
+     * the last frame of the old leader until the first refresh() after this returns.
+     */
+    public synchronized void repoint(SpaceCenter.Vessel newLeader) throws RPCException, StreamException {
+        // the old leader may already be gone, its streams can fail to remove
+        close();
+        open(newLeader);
+        refresh();
+    }
+
+    /**
+     * Reads the latest streamed values and publishes them as the current frame.
+     * Call once per tick from the control loop, then hand the frame to every follower.
+     */
+    public synchronized Frame refresh() {
+        try {
+            current = new Frame(
+                    System.nanoTime(),
+                    pitch.get(),
+                    roll.get(),
+                    heading.get(),
+                    direction.get(),
+                    throttle.get(),
+                    gear.get(),
+                    brakes.get(),
+                    sas.get(),
+                    sasMode.get(),
+                    lights.get(),
+                    currentStage.get());
+        } catch (StreamException e) {
+            // keep publishing the last good frame
+            e.printStackTrace();
+        }
+        return current;
+    }
+
+    public Frame get() {
+        return current;
+    }
+
+    public SpaceCenter.Vessel getLeader() {
+        return leader;
+    }
+
+    public synchronized void close() {
+        Stream<?>[] streams = {pitch, roll, heading, direction, throttle, gear, brakes, sas, sasMode, lights, currentStage};
+        // remove one by one, a failed remove shouldn't leave the rest open
+        for (Stream<?> stream : streams) {
+            try {
+                stream.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Leader state as of a single tick, safe to share across follower threads.
+     */
+    public static class Frame {
+
+        private final long timestampNanos;
+        private final float pitch;
+        private final float roll;
+        private final float heading;
+        private final Triplet<Double, Double, Double> direction;
+        private final float throttle;
+        private final boolean gear;
+        private final boolean brakes;
+        private final boolean sas;
+        private final SpaceCenter.SASMode sasMode;
+        private final boolean lights;
+        private final int currentStage;
+
+        public Frame(long timestampNanos,
+                     float pitch,
+                     float roll,
+                     float heading,
+                     Triplet<Double, Double, Double> direction,
+                     float throttle,
+                     boolean gear,
+                     boolean brakes,
+                     boolean sas,
+                     SpaceCenter.SASMode sasMode,
+                     boolean lights,
+                     int currentStage) {
+            this.timestampNanos = timestampNanos;
+            this.pitch = pitch;
+            this.roll = roll;
+            this.heading = heading;
+            this.direction = direction;
+            this.throttle = throttle;
+            this.gear = gear;
+            this.brakes = brakes;
+            this.sas = sas;
+            this.sasMode = sasMode;
+            this.lights = lights;
+            this.currentStage = currentStage;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public float getPitch() {
+            return pitch;
+        }
+
+        public float getRoll() {
+            return roll;
+        }
+
+        public float getHeading() {
+            return heading;
+        }
+
+        public Triplet<Double, Double, Double> getDirection() {
+            return direction;
+        }
+
+        public float getThrottle() {
+            return throttle;
+        }
+
+        public boolean getGear() {
+            return gear;
+        }
+
+        public boolean getBrakes() {
+            return brakes;
+        }
+
+        public boolean getSAS() {
+            return sas;
+        }
+
+        public SpaceCenter.SASMode getSASMode() {
+            return sasMode;
+        }
+
+        public boolean getLights() {
+            return lights;
+        }
+
+        public int getCurrentStage() {
+            return currentStage;
+        }
+    }
+}
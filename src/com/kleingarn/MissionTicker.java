@@ -0,0 +1,181 @@
+package com.kleingarn;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed rate loop timing against System.nanoTime. Call awaitNextTick() at the end of each loop
+ * iteration instead of sleeping for the polling interval: it sleeps until the next tick boundary,
+ * so the rate no longer drifts with the amount of work done in the loop.
+ *
+ * When the loop body overruns, every boundary it missed is dropped and the loop continues straight
+ * away on the most recent one, so ticks are merged instead of run back to back to catch up.
+ */
+public class MissionTicker {
+
+    final static Logger logger = LoggerFactory.getLogger(MissionTicker.class);
+
+    // upper bounds of the jitter histogram buckets in microseconds, the last bucket is everything above
+    private final static long[] jitterBucketMicros = {100, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 50_000, 100_000};
+
+    private final static long statsIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+
+    private final String name;
+    private volatile long periodNanos;
+
+    private long startNanos;
+    private long nextTickNanos;
+    private long lastTickNanos;
+    private long lastStatsNanos;
+    private boolean started = false;
+
+    private long ticks;
+    private long overruns;
+    private long skippedTicks;
+    private final long[] jitterHistogram = new long[jitterBucketMicros.length + 1];
+
+    public MissionTicker(String name, long periodMillis) {
+        this(name, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public MissionTicker(String name, long period, TimeUnit unit) {
+        this.name = name;
+        this.periodNanos = Math.max(1, unit.toNanos(period));
+    }
+
+    public static MissionTicker atHz(String name, double hz) {
+        return new MissionTicker(name, (long) (TimeUnit.SECONDS.toNanos(1) / hz), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Blocks until the next tick boundary. The first call starts the clock.
+     */
+    public synchronized void awaitNextTick() {
+        long now = System.nanoTime();
+        if (!started) {
+            started = true;
+            startNanos = now;
+            lastStatsNanos = now;
+            nextTickNanos = now + periodNanos;
+        }
+
+        if (now > nextTickNanos) {
+            // body overran, drop the boundaries we slept through and run on the latest one
+            long missed = (now - nextTickNanos) / periodNanos;
+            overruns++;
+            skippedTicks += missed;
+            nextTickNanos += missed * periodNanos;
+        } else {
+            sleepUntil(nextTickNanos);
+        }
+
+        long wake = System.nanoTime();
+        recordJitter(wake - nextTickNanos);
+        ticks++;
+        lastTickNanos = wake;
+        nextTickNanos += periodNanos;
+
+        if (wake - lastStatsNanos >= statsIntervalNanos) {
+            lastStatsNanos = wake;
+            logStats();
+        }
+    }
+
+    /**
+     * Changes the tick period. The next boundary is moved to one new period after the last tick, so
+     * speeding up takes effect straight away instead of after the old, longer period.
+     * Call it from the loop thread between ticks.
+     */
+    public synchronized void setPeriod(long period, TimeUnit unit) {
+        long newPeriodNanos = Math.max(1, unit.toNanos(period));
+        if (newPeriodNanos == periodNanos) {
+            return;
+        }
+        periodNanos = newPeriodNanos;
+        if (started) {
+            nextTickNanos = lastTickNanos + periodNanos;
+        }
+    }
+
+    public void setTargetHz(double hz) {
+        setPeriod((long) (TimeUnit.SECONDS.toNanos(1) / hz), TimeUnit.NANOSECONDS);
+    }
+
+    public long getPeriodMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(periodNanos);
+    }
+
+    public double getTargetHz() {
+        return TimeUnit.SECONDS.toNanos(1) / (double) periodNanos;
+    }
+
+    public synchronized double getAchievedHz() {
+        long elapsed = lastTickNanos - startNanos;
+        return elapsed <= 0 ? 0 : ticks / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    public synchronized long getOverruns() {
+        return overruns;
+    }
+
+    public synchronized long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * Count of ticks by how late they started, bucketed by getJitterBucketMicros().
+     */
+    public synchronized long[] getJitterHistogram() {
+        return Arrays.copyOf(jitterHistogram, jitterHistogram.length);
+    }
+
+    public static long[] getJitterBucketMicros() {
+        return Arrays.copyOf(jitterBucketMicros, jitterBucketMicros.length);
+    }
+
+    public synchronized void logStats() {
+        StringBuilder histogram = new StringBuilder();
+        for (int i = 0; i < jitterHistogram.length; i++) {
+            histogram.append(i < jitterBucketMicros.length ? "<=" + jitterBucketMicros[i] : ">" + jitterBucketMicros[i - 1])
+                    .append("us:")
+                    .append(jitterHistogram[i])
+                    .append(" ");
+        }
+        logger.info("[{}] target {} Hz, achieved {} Hz over {} ticks, {} overruns, {} ticks skipped",
+                name,
+                String.format("%.2f", getTargetHz()),
+                String.format("%.2f", getAchievedHz()),
+                ticks,
+                overruns,
+                skippedTicks);
+        logger.info("[{}] tick jitter {}", name, histogram.toString().trim());
+    }
+
+    private void recordJitter(long lateNanos) {
+        long lateMicros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, lateNanos));
+        int bucket = 0;
+        while (bucket < jitterBucketMicros.length && lateMicros > jitterBucketMicros[bucket]) {
+            bucket++;
+        }
+        jitterHistogram[bucket]++;
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cached part tree of a vessel: parent and child links, part names, activation and decouple stages,
+ * and the decoupler, docking port, parachute and engine modules of each part. Built in one sweep,
+ * then answered from memory. The modules come from one bulk call per module type plus a getPart per
+ * module; the four per-part reads (name, parent, stage, decouple stage) queue on the vessel's one
+ * connection, unless a connection pool is set, then every connection reads its share of the parts.
+ *
+ * Decoupling, docking and undocking change the vessel's part count. With useConnection() set, every
+ * vessel with a graph or a PartQuery gets one part list stream, shared by both, and a change in its
+ * size marks the graph stale, so the next of() rebuilds it, and drops the vessel's PartQuery results.
+ * Code that decouples or undocks itself can call invalidate() to rebuild without waiting for the stream.
+ */
+public class PartGraph {
+
+    final static Logger logger = LoggerFactory.getLogger(PartGraph.class);
+
+    private final static Map<SpaceCenter.Vessel, PartGraph> graphs = new ConcurrentHashMap<>();
+    // one part list stream per vessel, for its graph and its PartQuery results alike
+    private final static Map<SpaceCenter.Vessel, Stream<List<SpaceCenter.Part>>> partLists = new ConcurrentHashMap<>();
+    private final static AtomicInteger threadNumber = new AtomicInteger();
+    // one reader per pool connection
+    private final static ExecutorService builder = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "part-graph-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    // when set, part lists are streamed so dock, undock and decouple events invalidate the graph
+    private static volatile Connection connection;
+    // when set, per-part reads are spread over the pool's connections
+    private static volatile KrpcConnectionPool connectionPool;
+
+    private final SpaceCenter.Vessel vessel;
+    // server order
+    private final Map<SpaceCenter.Part, Node> nodes;
+    private volatile boolean stale;
+
+    private PartGraph(SpaceCenter.Vessel vessel, Map<SpaceCenter.Part, Node> nodes) {
+        this.vessel = vessel;
+        this.nodes = nodes;
+    }
+
+    public static void useConnection(Connection connection) {
+        PartGraph.connection = connection;
+    }
+
+    // the connection part lists are streamed on, null if none was set
+    public static Connection getConnection() {
+        return connection;
+    }
+
+    public static void useConnectionPool(KrpcConnectionPool pool) {
+        connectionPool = pool;
+    }
+
+    /**
+     * The vessel's part graph, built on first use and rebuilt after its part count changed.
+     */
+    public static PartGraph of(SpaceCenter.Vessel vessel) throws RPCException {
+        PartGraph graph = graphs.get(vessel);
+        if (graph == null || graph.stale) {
+            synchronized (PartGraph.class) {
+                graph = graphs.get(vessel);
+                if (graph == null || graph.stale) {
+                    graph = build(vessel);
+                    graphs.put(vessel, graph);
+                }
+            }
+        }
+        return graph;
+    }
+
+    // the vessel's graph if one was built, stale or not, without building one
+    public static PartGraph cached(SpaceCenter.Vessel vessel) {
+        return graphs.get(vessel);
+    }
+
+    // marks the vessel's graph stale, e.g. right after decoupling or undocking a part of it
+    public static void invalidate(SpaceCenter.Vessel vessel) {
+        PartQuery.invalidate(vessel);
+        PartGraph graph = graphs.get(vessel);
+        if (graph != null) {
+            graph.stale = true;
+        }
+    }
+
+    // drops the graph of a vessel that no longer exists
+    public static void forget(SpaceCenter.Vessel vessel) {
+        PartQuery.forget(vessel);
+        graphs.remove(vessel);
+        Stream<List<SpaceCenter.Part>> partList = partLists.remove(vessel);
+        if (partList != null) {
+            try {
+                partList.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Streams the vessel's part list once, if a connection is set; any later change in its size
+     * invalidates the graph and the PartQuery results. knownSize is the part count the caller just
+     * read, or -1, so a change before the stream's first value isn't missed.
+     */
+    static void watchPartCount(SpaceCenter.Vessel vessel, SpaceCenter.Parts parts, int knownSize) throws RPCException {
+        Connection watchWith = connection;
+        if (watchWith == null || partLists.containsKey(vessel)) {
+            return;
+        }
+        synchronized (partLists) {
+            if (partLists.containsKey(vessel)) {
+                return;
+            }
+            try {
+                Stream<List<SpaceCenter.Part>> partList = watchWith.addStream(parts, "getAll");
+                AtomicInteger size = new AtomicInteger(knownSize);
+                // stream thread, no RPCs here
+                partList.addCallback(current -> {
+                    if (current == null) {
+                        return;
+                    }
+                    int previous = size.getAndSet(current.size());
+                    if (previous != -1 && previous != current.size()) {
+                        invalidate(vessel);
+                    }
+                });
+                partList.start();
+                partLists.put(vessel, partList);
+            } catch (StreamException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static PartGraph build(SpaceCenter.Vessel vessel) throws RPCException {
+        long start = System.nanoTime();
+        SpaceCenter.Parts parts = vessel.getParts();
+        List<SpaceCenter.Part> all = parts.getAll();
+
+        Map<SpaceCenter.Part, SpaceCenter.Decoupler> decouplers = new HashMap<>();
+        for (SpaceCenter.Decoupler decoupler : parts.getDecouplers()) {
+            decouplers.put(decoupler.getPart(), decoupler);
+        }
+        Map<SpaceCenter.Part, SpaceCenter.DockingPort> dockingPorts = new HashMap<>();
+        for (SpaceCenter.DockingPort dockingPort : parts.getDockingPorts()) {
+            dockingPorts.put(dockingPort.getPart(), dockingPort);
+        }
+        Map<SpaceCenter.Part, SpaceCenter.Parachute> parachutes = new HashMap<>();
+        for (SpaceCenter.Parachute parachute : parts.getParachutes()) {
+            parachutes.put(parachute.getPart(), parachute);
+        }
+        Map<SpaceCenter.Part, SpaceCenter.Engine> engines = new HashMap<>();
+        for (SpaceCenter.Engine engine : parts.getEngines()) {
+            engines.put(engine.getPart(), engine);
+        }
+
+        Map<SpaceCenter.Part, PartReads> reads = readParts(vessel, all);
+        // handles read on a pool connection compare equal to ours by id, keep ours
+        Map<SpaceCenter.Part, SpaceCenter.Part> handles = new HashMap<>();
+        for (SpaceCenter.Part part : all) {
+            handles.put(part, part);
+        }
+        Map<SpaceCenter.Part, Node> nodes = new LinkedHashMap<>();
+        for (SpaceCenter.Part part : all) {
+            PartReads read = reads.get(part);
+            SpaceCenter.Part parent = read.parent == null ? null : handles.getOrDefault(read.parent, read.parent);
+            nodes.put(part, new Node(part, read.name, parent, read.stage, read.decoupleStage,
+                    decouplers.get(part), dockingPorts.get(part), parachutes.get(part), engines.get(part)));
+        }
+        // children come from the parent links, no getChildren calls
+        for (Node node : nodes.values()) {
+            Node parent = node.parent == null ? null : nodes.get(node.parent);
+            if (parent != null) {
+                parent.children.add(node.part);
+            }
+        }
+
+        PartGraph graph = new PartGraph(vessel, Collections.unmodifiableMap(nodes));
+        watchPartCount(vessel, parts, nodes.size());
+        logger.info("Built part graph of {} with {} parts in {} ms",
+                vessel, nodes.size(), (System.nanoTime() - start) / 1_000_000);
+        return graph;
+    }
+
+    // name, parent and stages of every part, on the pool's connections when there is one
+    private static Map<SpaceCenter.Part, PartReads> readParts(SpaceCenter.Vessel vessel, List<SpaceCenter.Part> all) throws RPCException {
+        Map<SpaceCenter.Part, PartReads> reads = new ConcurrentHashMap<>();
+        KrpcConnectionPool pool = connectionPool;
+        if (pool != null && pool.size() > 1) {
+            List<SpaceCenter.Vessel> handles = pool.onEveryConnection(vessel);
+            List<Future<?>> readers = new ArrayList<>(handles.size());
+            for (int i = 0; i < handles.size(); i++) {
+                int share = i;
+                SpaceCenter.Vessel handle = handles.get(i);
+                readers.add(builder.submit((Callable<Void>) () -> {
+                    // same server order on every connection, each reads every n-th part
+                    List<SpaceCenter.Part> theirs = handle.getParts().getAll();
+                    for (int j = share; j < theirs.size(); j += handles.size()) {
+                        reads.put(theirs.get(j), new PartReads(theirs.get(j)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> reader : readers) {
+                try {
+                    reader.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RPCException) {
+                        throw (RPCException) e.getCause();
+                    }
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    e.printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        // no pool, or parts a pool connection didn't see
+        for (SpaceCenter.Part part : all) {
+            if (!reads.containsKey(part)) {
+                reads.put(part, new PartReads(part));
+            }
+        }
+        return reads;
+    }
+
+    public SpaceCenter.Vessel getVessel() {
+        return vessel;
+    }
+
+    public boolean isStale() {
+        return stale;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public List<SpaceCenter.Part> getParts() {
+        return new ArrayList<>(nodes.keySet());
+    }
+
+    public boolean contains(SpaceCenter.Part part) {
+        return nodes.containsKey(part);
+    }
+
+    public String getName(SpaceCenter.Part part) {
+        return node(part).name;
+    }
+
+    // null for the root part
+    public SpaceCenter.Part getParent(SpaceCenter.Part part) {
+        return node(part).parent;
+    }
+
+    public List<SpaceCenter.Part> getChildren(SpaceCenter.Part part) {
+        return Collections.unmodifiableList(node(part).children);
+    }
+
+    public int getStage(SpaceCenter.Part part) {
+        return node(part).stage;
+    }
+
+    // -1 if the part is never decoupled
+    public int getDecoupleStage(SpaceCenter.Part part) {
+        return node(part).decoupleStage;
+    }
+
+    // the module, or null if the part has none
+    public SpaceCenter.Decoupler getDecoupler(SpaceCenter.Part part) {
+        return node(part).decoupler;
+    }
+
+    public SpaceCenter.DockingPort getDockingPort(SpaceCenter.Part part) {
+        return node(part).dockingPort;
+    }
+
+    public SpaceCenter.Parachute getParachute(SpaceCenter.Part part) {
+        return node(part).parachute;
+    }
+
+    public SpaceCenter.Engine getEngine(SpaceCenter.Part part) {
+        return node(part).engine;
+    }
+
+    public List<SpaceCenter.Part> withName(String name) {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.name.equals(name)) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    // parts activated in the stage
+    public List<SpaceCenter.Part> inStage(int stage) {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.stage == stage) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    // parts dropped by some stage, i.e. decouple stage other than -1
+    public List<SpaceCenter.Part> getDecoupleableParts() {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.decoupleStage != -1) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    public List<SpaceCenter.Part> withDecoupler() {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.decoupler != null) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    public List<SpaceCenter.Part> withDockingPort() {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.dockingPort != null) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    public List<SpaceCenter.Part> withParachute() {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.parachute != null) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    public List<SpaceCenter.Part> withEngine() {
+        List<SpaceCenter.Part> matching = new ArrayList<>();
+        for (Node node : nodes.values()) {
+            if (node.engine != null) {
+                matching.add(node.part);
+            }
+        }
+        return matching;
+    }
+
+    private Node node(SpaceCenter.Part part) {
+        Node node = nodes.get(part);
+        if (node == null) {
+            throw new IllegalArgumentException("Part " + part + " is not in the part graph of " + vessel);
+        }
+        return node;
+    }
+
+    private static class PartReads {
+        final String name;
+        final SpaceCenter.Part parent;
+        final int stage;
+        final int decoupleStage;
+
+        PartReads(SpaceCenter.Part part) throws RPCException {
+            this.name = part.getName();
+            this.parent = part.getParent();
+            this.stage = part.getStage();
+            this.decoupleStage = part.getDecoupleStage();
+        }
+    }
+
+    private static class Node {
+        final SpaceCenter.Part part;
+        final String name;
+        final SpaceCenter.Part parent;
+        final List<SpaceCenter.Part> children = new ArrayList<>();
+        final int stage;
+        final int decoupleStage;
+        final SpaceCenter.Decoupler decoupler;
+        final SpaceCenter.DockingPort dockingPort;
+        final SpaceCenter.Parachute parachute;
+        final SpaceCenter.Engine engine;
+
+        Node(SpaceCenter.Part part, String name, SpaceCenter.Part parent, int stage, int decoupleStage,
+             SpaceCenter.Decoupler decoupler, SpaceCenter.DockingPort dockingPort,
+             SpaceCenter.Parachute parachute, SpaceCenter.Engine engine) {
+            this.part = part;
+            this.name = name;
+            this.parent = parent;
+            this.stage = stage;
+            this.decoupleStage = decoupleStage;
+            this.decoupler = decoupler;
+            this.dockingPort = dockingPort;
+            this.parachute = parachute;
+            this.engine = engine;
+        }
+    }
+}
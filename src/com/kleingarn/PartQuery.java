@@ -0,0 +1,286 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Composable query over a vessel's parts, e.g.
+ * PartQuery.on(vessel).named("GrapplingDevice").inStage(2).list().
+ * Criteria with a native bulk call (withName, withModule, inStage, inDecoupleStage) cost one round
+ * trip each instead of one RPC per part; relations like childOf and parentOf need the vessel's
+ * PartGraph. When a fresh PartGraph is already cached every query is answered from it without RPCs.
+ *
+ * Results are cached per vessel and query until the vessel's parts change. With a connection set
+ * through PartGraph.useConnection the vessel's part list is streamed, on the same stream its
+ * PartGraph uses, and a change in its size drops the results whether or not a graph was ever built;
+ * without one they are dropped only by PartGraph.invalidate and forget, so call invalidate after
+ * docking or decoupling yourself.
+ */
+public class PartQuery {
+
+    final static Logger logger = LoggerFactory.getLogger(PartQuery.class);
+
+    /**
+     * Part modules by their KSP module names, a part has the module if it has any of them.
+     */
+    public enum Module {
+        DECOUPLER("ModuleDecouple", "ModuleAnchoredDecoupler"),
+        DOCKING_PORT("ModuleDockingNode"),
+        PARACHUTE("ModuleParachute"),
+        ENGINE("ModuleEngines", "ModuleEnginesFX");
+
+        private final String[] moduleNames;
+
+        Module(String... moduleNames) {
+            this.moduleNames = moduleNames;
+        }
+
+        boolean isOn(PartGraph graph, SpaceCenter.Part part) {
+            switch (this) {
+                case DECOUPLER:
+                    return graph.getDecoupler(part) != null;
+                case DOCKING_PORT:
+                    return graph.getDockingPort(part) != null;
+                case PARACHUTE:
+                    return graph.getParachute(part) != null;
+                default:
+                    return graph.getEngine(part) != null;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface BulkCall {
+        List<SpaceCenter.Part> fetch(SpaceCenter.Parts parts) throws RPCException;
+    }
+
+    private static class Criterion {
+        final String key;
+        // null when the server has no bulk call for it
+        final BulkCall bulk;
+        final BiPredicate<PartGraph, SpaceCenter.Part> test;
+
+        Criterion(String key, BulkCall bulk, BiPredicate<PartGraph, SpaceCenter.Part> test) {
+            this.key = key;
+            this.bulk = bulk;
+            this.test = test;
+        }
+    }
+
+    // query key to result, per vessel
+    private final static Map<SpaceCenter.Vessel, Map<String, List<?>>> results = new ConcurrentHashMap<>();
+    private final static Map<SpaceCenter.Vessel, SpaceCenter.Parts> partsHandles = new ConcurrentHashMap<>();
+
+    private final SpaceCenter.Vessel vessel;
+    private final List<Criterion> criteria = new ArrayList<>();
+
+    private PartQuery(SpaceCenter.Vessel vessel) {
+        this.vessel = vessel;
+    }
+
+    public static PartQuery on(SpaceCenter.Vessel vessel) {
+        return new PartQuery(vessel);
+    }
+
+    // drops cached results, called by PartGraph when the vessel's parts change
+    public static void invalidate(SpaceCenter.Vessel vessel) {
+        results.remove(vessel);
+    }
+
+    // called by PartGraph.forget, which also removes the part list stream
+    public static void forget(SpaceCenter.Vessel vessel) {
+        results.remove(vessel);
+        partsHandles.remove(vessel);
+    }
+
+    private PartQuery copy() {
+        PartQuery copy = new PartQuery(vessel);
+        copy.criteria.addAll(criteria);
+        return copy;
+    }
+
+    public PartQuery named(String name) {
+        criteria.add(new Criterion("name=" + name,
+                parts -> parts.withName(name),
+                (graph, part) -> graph.getName(part).equals(name)));
+        return this;
+    }
+
+    public PartQuery withModule(Module module) {
+        criteria.add(new Criterion("module=" + module,
+                parts -> {
+                    // a part can carry more than one of the module names
+                    Set<SpaceCenter.Part> matching = new LinkedHashSet<>();
+                    for (String moduleName : module.moduleNames) {
+                        matching.addAll(parts.withModule(moduleName));
+                    }
+                    return new ArrayList<>(matching);
+                },
+                (graph, part) -> module.isOn(graph, part)));
+        return this;
+    }
+
+    // parts activated in the stage
+    public PartQuery inStage(int stage) {
+        criteria.add(new Criterion("stage=" + stage,
+                parts -> parts.inStage(stage),
+                (graph, part) -> graph.getStage(part) == stage));
+        return this;
+    }
+
+    public PartQuery inDecoupleStage(int stage) {
+        criteria.add(new Criterion("decoupleStage=" + stage,
+                parts -> parts.inDecoupleStage(stage),
+                (graph, part) -> graph.getDecoupleStage(part) == stage));
+        return this;
+    }
+
+    // parts attached directly to parent
+    public PartQuery childOf(SpaceCenter.Part parent) {
+        criteria.add(new Criterion("childOf=" + parent, null,
+                (graph, part) -> parent.equals(graph.getParent(part))));
+        return this;
+    }
+
+    // the part child is attached to
+    public PartQuery parentOf(SpaceCenter.Part child) {
+        criteria.add(new Criterion("parentOf=" + child, null,
+                (graph, part) -> graph.contains(child) && part.equals(graph.getParent(child))));
+        return this;
+    }
+
+    /**
+     * Matching parts in server order, from the cache if this query ran since the parts last changed.
+     */
+    @SuppressWarnings("unchecked")
+    public List<SpaceCenter.Part> list() throws RPCException {
+        Map<String, List<?>> cache = cacheFor(vessel);
+        String key = key();
+        List<SpaceCenter.Part> result = (List<SpaceCenter.Part>) cache.get(key);
+        if (result == null) {
+            long start = System.nanoTime();
+            watchPartCount();
+            result = Collections.unmodifiableList(evaluate());
+            cache.put(key, result);
+            logger.info("Part query [{}] on {} found {} parts in {} ms",
+                    key, vessel, result.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return result;
+    }
+
+    /**
+     * The docking port modules of the matching parts. Without criteria this is the single
+     * getDockingPorts call, with criteria one getDockingPort per matching port part unless a fresh
+     * PartGraph already knows them. The query itself is left unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    public List<SpaceCenter.DockingPort> dockingPorts() throws RPCException {
+        Map<String, List<?>> cache = cacheFor(vessel);
+        String key = "dockingPorts:" + key();
+        List<SpaceCenter.DockingPort> ports = (List<SpaceCenter.DockingPort>) cache.get(key);
+        if (ports != null) {
+            return ports;
+        }
+        watchPartCount();
+        if (criteria.isEmpty()) {
+            ports = parts().getDockingPorts();
+        } else {
+            PartGraph graph = PartGraph.cached(vessel);
+            ports = new ArrayList<>();
+            for (SpaceCenter.Part part : copy().withModule(Module.DOCKING_PORT).list()) {
+                boolean known = graph != null && !graph.isStale() && graph.contains(part);
+                ports.add(known ? graph.getDockingPort(part) : part.getDockingPort());
+            }
+        }
+        ports = Collections.unmodifiableList(ports);
+        cacheFor(vessel).put(key, ports);
+        return ports;
+    }
+
+    // the part list stream is shared with the vessel's PartGraph
+    private void watchPartCount() throws RPCException {
+        PartGraph.watchPartCount(vessel, parts(), -1);
+    }
+
+    public boolean isEmpty() throws RPCException {
+        return list().isEmpty();
+    }
+
+    private List<SpaceCenter.Part> evaluate() throws RPCException {
+        PartGraph graph = PartGraph.cached(vessel);
+        if (graph == null || graph.isStale()) {
+            graph = null;
+            for (Criterion criterion : criteria) {
+                if (criterion.bulk == null) {
+                    graph = PartGraph.of(vessel);
+                    break;
+                }
+            }
+        }
+        if (graph != null) {
+            List<SpaceCenter.Part> matching = new ArrayList<>();
+            for (SpaceCenter.Part part : graph.getParts()) {
+                if (matches(graph, part)) {
+                    matching.add(part);
+                }
+            }
+            return matching;
+        }
+
+        SpaceCenter.Parts parts = parts();
+        if (criteria.isEmpty()) {
+            return parts.getAll();
+        }
+        // one round trip per criterion, intersected keeping the first call's order
+        List<SpaceCenter.Part> matching = new ArrayList<>(criteria.get(0).bulk.fetch(parts));
+        for (int i = 1; i < criteria.size() && !matching.isEmpty(); i++) {
+            matching.retainAll(new HashSet<>(criteria.get(i).bulk.fetch(parts)));
+        }
+        return matching;
+    }
+
+    private boolean matches(PartGraph graph, SpaceCenter.Part part) {
+        for (Criterion criterion : criteria) {
+            if (!criterion.test.test(graph, part)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private SpaceCenter.Parts parts() throws RPCException {
+        SpaceCenter.Parts parts = partsHandles.get(vessel);
+        if (parts == null) {
+            parts = vessel.getParts();
+            partsHandles.put(vessel, parts);
+        }
+        return parts;
+    }
+
+    private static Map<String, List<?>> cacheFor(SpaceCenter.Vessel vessel) {
+        return results.computeIfAbsent(vessel, v -> new ConcurrentHashMap<>());
+    }
+
+    private String key() {
+        StringBuilder key = new StringBuilder();
+        for (Criterion criterion : criteria) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(criterion.key);
+        }
+        return key.length() == 0 ? "all" : key.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.kleingarn;
+
+/**
+ * Client-side PID controller. Not thread safe, keep one per follower and axis.
+ */
+public class PidController {
+
+    private final double kp;
+    private final double ki;
+    private final double kd;
+    private final double minOutput;
+    private final double maxOutput;
+
+    private double integral;
+    private double lastError;
+    private boolean hasLastError;
+
+    public PidController(double kp, double ki, double kd, double minOutput, double maxOutput) {
+        this.kp = kp;
+        this.ki = ki;
+        this.kd = kd;
+        this.minOutput = minOutput;
+        this.maxOutput = maxOutput;
+    }
+
+    /**
+     * Returns the clamped output for the error measured dtSeconds after the previous update.
+     */
+    public double update(double error, double dtSeconds) {
+        double derivative = 0;
+        if (hasLastError && dtSeconds > 0) {
+            derivative = (error - lastError) / dtSeconds;
+        }
+        lastError = error;
+        hasLastError = true;
+
+        double candidate = integral + error * dtSeconds;
+        double output = kp * error + ki * candidate + kd * derivative;
+        if (output > maxOutput) {
+            output = maxOutput;
+        } else if (output < minOutput) {
+            output = minOutput;
+        } else {
+            // only integrate while not saturated, so the integral doesn't wind up
+            integral = candidate;
+        }
+        return output;
+    }
+
+    public void reset() {
+        integral = 0;
+        lastError = 0;
+        hasLastError = false;
+    }
+}
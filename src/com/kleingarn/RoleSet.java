@@ -0,0 +1,112 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The vessels that currently play a role, e.g. the kamikazes of a squadron, as decided by a rule on
+ * the vessel, its name and the active vessel. The vessel list and the active vessel are streamed
+ * with callbacks that only mark the set stale; get() recomputes it from the VesselIndex on the
+ * first call after a change and otherwise returns the cached list without any RPC.
+ */
+public class RoleSet {
+
+    final static Logger logger = LoggerFactory.getLogger(RoleSet.class);
+
+    @FunctionalInterface
+    public interface Rule {
+        boolean matches(SpaceCenter.Vessel vessel, String name, SpaceCenter.Vessel activeVessel);
+    }
+
+    private final String role;
+    private final Rule rule;
+    private final VesselIndex index;
+    private final Stream<List<SpaceCenter.Vessel>> vessels;
+    private final Stream<SpaceCenter.Vessel> activeVessel;
+
+    private volatile boolean stale = true;
+    private volatile List<SpaceCenter.Vessel> members = Collections.emptyList();
+    private long recomputes;
+
+    public RoleSet(Connection connection, SpaceCenter spaceCenter, String role, Rule rule) throws RPCException, StreamException {
+        this.role = role;
+        this.rule = rule;
+        this.index = VesselIndex.of(spaceCenter);
+        this.vessels = connection.addStream(SpaceCenter.class, "getVessels");
+        this.activeVessel = connection.addStream(SpaceCenter.class, "getActiveVessel");
+        // callbacks run on the stream thread, no RPCs there
+        vessels.addCallback(v -> stale = true);
+        activeVessel.addCallback(v -> stale = true);
+        vessels.start();
+        activeVessel.start();
+    }
+
+    /**
+     * Vessels matching the rule, recomputed only when the vessel list or the active vessel changed.
+     */
+    public synchronized List<SpaceCenter.Vessel> get() throws RPCException {
+        if (!stale) {
+            return members;
+        }
+        // a change arriving while we recompute marks it stale again
+        stale = false;
+        long start = System.nanoTime();
+        SpaceCenter.Vessel active;
+        try {
+            active = activeVessel.get();
+        } catch (StreamException e) {
+            e.printStackTrace();
+            stale = true;
+            return members;
+        }
+        List<SpaceCenter.Vessel> matching = new ArrayList<>();
+        // only vessels new since the last change cost a getName
+        for (SpaceCenter.Vessel vessel : index.refresh().getVessels()) {
+            String name = index.getName(vessel);
+            if (name != null && rule.matches(vessel, name, active)) {
+                matching.add(vessel);
+            }
+        }
+        members = Collections.unmodifiableList(matching);
+        recomputes++;
+        logger.info("Role {} has {} vessels, recomputed in {} ms",
+                role, members.size(), (System.nanoTime() - start) / 1_000_000);
+        Squadron.printActiveVesselsFromList(members, index);
+        return members;
+    }
+
+    public boolean contains(SpaceCenter.Vessel vessel) throws RPCException {
+        return get().contains(vessel);
+    }
+
+    // e.g. after a vessel of the set threw IllegalArgumentException before the list stream caught up
+    public void invalidate() {
+        stale = true;
+    }
+
+    public synchronized long getRecomputes() {
+        return recomputes;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void close() {
+        try {
+            vessels.remove();
+            activeVessel.remove();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 public class RunAWDRover {
 
@@ -29,20 +30,23 @@ public class RunAWDRover {
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
 
 
-        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "Mark2Cockpit").get(0);
+        Map<String, List<SpaceCenter.Vessel>> vesselsByPart =
+                Squadron.getVesselsWithParts(spaceCenter, "Mark2Cockpit", "ladder1", "longAntenna");
+
+        SpaceCenter.Vessel lead = vesselsByPart.get("Mark2Cockpit").get(0);
         logger.info("Setting lead vessel {} name to {}", lead.getName(), leaderName);
-        lead.setName(leaderName);
+        VesselIndex.of(spaceCenter).rename(lead, leaderName);
 
-        List<SpaceCenter.Vessel> leftWheels = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "ladder1");
+        List<SpaceCenter.Vessel> leftWheels = vesselsByPart.get("ladder1");
         for (SpaceCenter.Vessel vessel : leftWheels) {
             logger.info("Setting left wheel vessel {} name to {}", vessel.getName(), leftWheelName);
-            vessel.setName(leftWheelName);
+            VesselIndex.of(spaceCenter).rename(vessel, leftWheelName);
         }
 
-        List<SpaceCenter.Vessel> rightWheels = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> rightWheels = vesselsByPart.get("longAntenna");
         for (SpaceCenter.Vessel vessel : rightWheels) {
             logger.info("Setting right wheel vessel {} name to {}", vessel.getName(), rightWheelName);
-            vessel.setName(rightWheelName);
+            VesselIndex.of(spaceCenter).rename(vessel, rightWheelName);
         }
 
 
@@ -54,6 +58,7 @@ public class RunAWDRover {
                 spaceCenter);
 
         int leadPollingIntervalMillis = 10;
+        SquadronExecutor squadronExecutor = SquadronExecutor.forSquadron(squad, 500);
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl(); // initialized later in while loop
@@ -84,7 +89,7 @@ public class RunAWDRover {
                     + ", 3 is: " + leadControl.getActionGroup(3)
             );
 
-            squad.getSquadronVessels().parallelStream().forEach(v -> {
+            squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                 try {
                     if (!v.equals(leader)) {
                         SpaceCenter.Control vesselControl = v.getControl();
@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -19,14 +20,23 @@ public class RunCentipede {
     static String leaderName = "puller";
     final static String squadronName = "centipede";
 
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+
     static SpaceCenter.Vessel leadVessel;
 
     // The threshold at which the autopilot will try to match the target roll angle, if any. Defaults to 5 degrees.
     final static double rollThreshold = 5.0;
 
     final static int leadPollingIntervalMillis = 1000;
+    // the loop speeds up to maxPollingHz while the leader manoeuvres and slows to minPollingHz when it settles
+    final static double minPollingHz = 1;
+    final static double maxPollingHz = 10;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -35,7 +45,7 @@ public class RunCentipede {
 
 //        List<SpaceCenter.Vessel> vessels = new ArrayList<>();
 
-//        List<SpaceCenter.Vessel> potentialLeaderList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "sensorBarometer");
+//        List<SpaceCenter.Vessel> potentialLeaderList = Squadron.getVesselsWithPart(spaceCenter, "sensorBarometer");
 //        for (SpaceCenter.Vessel vessel : potentialLeaderList) {
 //            logger.info("Setting vessel {} name to ", vessel.getName(), leaderName);
 //            vessel.setName(leaderName);
@@ -50,31 +60,35 @@ public class RunCentipede {
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
+
+        ActionGroupSync actionGroupSync = new ActionGroupSync(connection, leadVessel);
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leadVessel);
 
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
+        AdaptiveRateController rateController = new AdaptiveRateController(squadronName, minPollingHz, maxPollingHz);
         while (true) {
-            for(SpaceCenter.Vessel vessel : squad.getSquadronVessels()) {
+            // one read of the leader per tick, shared by every follower
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            squadronExecutor.runTick(squad.getSquadronVessels(), vessel -> {
                 try {
                     if(!vessel.equals(leadVessel)){
-                        setNonDirectionalControls(vessel.getControl(), leadVessel.getControl());
+                        setNonDirectionalControls(FollowerControlMirror.of(vessel), leaderState);
                     }
                 } catch (IllegalArgumentException e) {
-                    e.printStackTrace();
                     logger.error("[ERROR] No such vessel, removing from squadron");
-                    squad.removeVesselFromSquadron(vessel);
+                    squadronExecutor.markLost(vessel, squad, e);
                 }
+            });
 
-                for (int i=0; i<10; i++) {
-                    try {
-                        setActionGroupsOnSquadron(i, leadVessel.getControl().getActionGroup(i), squad.getSquadronVessels());
-                    } catch (IllegalArgumentException e) {
-                        logger.error("Caught IllegalArgumentException, removed vessel from squadron" + i);
-                        e.printStackTrace();
-                    }
-                }
-            }
+            actionGroupSync.sync(squad.getSquadronVessels(), squadronExecutor);
+            rateController.adjust(ticker, leaderState, actionGroupSync.getMask());
 
-            if(leadVessel.getControl().getActionGroup(7)) {
-                logger.info("Action group 1 is {}, decoupling all decouplers", leadVessel.getControl().getActionGroup(7));
+            if(actionGroupSync.get(7)) {
+                logger.info("Action group 1 is {}, decoupling all decouplers", actionGroupSync.get(7));
                 leadVessel.getControl().setActionGroup(7, false);
                 for(SpaceCenter.Vessel vessel : squad.getSquadronVessels()) {
                     List<SpaceCenter.Decoupler> allDecouplers = vessel.getParts().getDecouplers();
@@ -84,25 +98,25 @@ public class RunCentipede {
                 }
             }
 
-            if(leadVessel.getControl().getActionGroup(9)) {
+            if(actionGroupSync.get(9)) {
                 deployChutes(squad.getSquadronVessels());
             }
 
-            sleep(leadPollingIntervalMillis);
+            ticker.awaitNextTick();
         }
 //        SpaceCenter.Control leadControl = leader.getControl();
 //        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
 //        deployChutes(vessels);
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                                 SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror vesselControl,
+                                                 LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setSASMode(leadControl.getSASMode());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            vesselControl.setBrakes(leaderState.getBrakes());
+            vesselControl.setSAS(leaderState.getSAS());
+            vesselControl.setSASMode(leaderState.getSASMode());
+            vesselControl.setGear(leaderState.getGear());
+            vesselControl.setThrottle(leaderState.getThrottle());
 
 //            if(leadControl.getActionGroup(3)) {
 //                vesselControl.setInputMode(SpaceCenter.ControlInputMode.OVERRIDE);
@@ -112,7 +126,7 @@ public class RunCentipede {
 //                vesselControl.setPitch(0);
 //            }
 //            vesselControl.setWheelThrottle(leadControl.getWheelThrottle());
-            vesselControl.setWheelThrottle(leadControl.getThrottle());
+            vesselControl.setWheelThrottle(leaderState.getThrottle());
 //            vesselControl.setInputMode(SpaceCenter.ControlInputMode.ADDITIVE);
 //            vesselControl.setYaw(leadControl.getYaw());
 //            vesselControl.setRoll(leadControl.getRoll());
@@ -122,17 +136,6 @@ public class RunCentipede {
         }
     }
 
-    private static void setActionGroupsOnSquadron(int groupNumber, boolean groupState, List<SpaceCenter.Vessel> squadronVessels) {
-
-        for(SpaceCenter.Vessel vessel : squadronVessels) {
-            try {
-                vessel.getControl().setActionGroup(groupNumber, groupState);
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
     private static void deployChutes(List<SpaceCenter.Vessel> vessels) {
             try {
                 for(SpaceCenter.Vessel v: vessels ) {
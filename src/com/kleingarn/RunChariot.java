@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -11,6 +12,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RunChariot {
 
@@ -20,6 +23,12 @@ public class RunChariot {
     static String pullerName = "puller";
     final static String squadronName = "air";
 
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+
     // v1 impl, listen for changes from leader using callbacks, unused here
     // squad.getAndSetUpdatesFromLeader(spaceCenter, connection);
 
@@ -47,10 +56,33 @@ public class RunChariot {
     final static double rollThreshold = 5.0;
 
     final static int leadPollingIntervalMillis = 100;
+    // the loop speeds up to maxPollingHz while the leader manoeuvres and slows to minPollingHz when it settles
+    final static double minPollingHz = 2;
+    final static double maxPollingHz = 20;
 
     final static boolean tweakAp = false;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // per-role autopilot tuning, each follower gets its profile pushed once
+    // pullers drag the chariot and keep the kRPC default response
+    final static AutopilotProfile pullerProfile = new AutopilotProfile("puller")
+            .withStoppingTime(new Triplet<>(0.5, 0.5, 0.5))
+            .withDecelerationTime(new Triplet<>(5.0, 5.0, 5.0))
+            .withTimeToPeak(new Triplet<>(3.0, 3.0, 3.0))
+            .withAttenuationAngle(attenuationAngle)
+            .withRollThreshold(rollThreshold);
+    // passengers ride along and are tuned soft when tweakAp is set
+    final static AutopilotProfile passengerProfile = tweakAp
+            ? new AutopilotProfile("passenger")
+                    .withStoppingTime(stoppingTime)
+                    .withDecelerationTime(decelerationTime)
+                    .withTimeToPeak(timeToPeak)
+                    .withAttenuationAngle(attenuationAngle)
+                    .withRollThreshold(rollThreshold)
+            : new AutopilotProfile("passenger").withRollThreshold(rollThreshold);
+
+    final static Set<SpaceCenter.Vessel> pullers = ConcurrentHashMap.newKeySet();
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -67,18 +99,19 @@ public class RunChariot {
 
         List<SpaceCenter.Vessel> vessels = new ArrayList<>();
 
-        List<SpaceCenter.Vessel> potentialPullerList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "sensorBarometer");
+        List<SpaceCenter.Vessel> potentialPullerList = Squadron.getVesselsWithPart(spaceCenter, "sensorBarometer");
         for (SpaceCenter.Vessel vessel : potentialPullerList) {
             logger.info("Setting vessel {} name to ", vessel.getName(), pullerName);
-            vessel.setName(pullerName);
+            VesselIndex.of(spaceCenter).rename(vessel, pullerName);
+            pullers.add(vessel);
             vessels.add(vessel);
         }
 
         SpaceCenter.Vessel leader = null;
-        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter, "longAntenna");
         for (SpaceCenter.Vessel vessel : potentialLeadList) {
             logger.info("Setting vessel {} name to ", vessel.getName(), leaderName);
-            vessel.setName(leaderName);
+            VesselIndex.of(spaceCenter).rename(vessel, leaderName);
             spaceCenter.setActiveVessel(vessel);
             leader = vessel;
             vessels.add(vessel);
@@ -88,6 +121,10 @@ public class RunChariot {
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
 
         for(SpaceCenter.Vessel vessel : squad.getSquadronVessels()) {
             if(!vessel.equals(leader) && !vessel.getName().equals(pullerName)){
@@ -102,7 +139,8 @@ public class RunChariot {
             }
         }
         SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        ActionGroupSync actionGroupSync = new ActionGroupSync(connection, leader);
 
         logger.info("##### Built squadron from available active vessels #####");
 //        logger.info("squadron name: {}", squad.getSquadronName());
@@ -116,30 +154,27 @@ public class RunChariot {
         List<SpaceCenter.Decoupler> allDecouplers = spaceCenter.getActiveVessel().getParts().getDecouplers();
         logger.info("Current vessel has " + allDecouplers.size() + " decouplers");
 
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
+        AdaptiveRateController rateController = new AdaptiveRateController(squadronName, minPollingHz, maxPollingHz);
         while (true) {
 
             leadControl = leader.getControl();
-            if (leader.getControl().getActionGroup(7)) {
+            actionGroupSync.refresh();
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            rateController.adjust(ticker, leaderState, actionGroupSync.getMask());
+            if (actionGroupSync.get(7)) {
                 setAutopilotLevelOnSquadron(vessels, leader);
             } else {
-                if (leader.getControl().getActionGroup(6)) {
+                if (actionGroupSync.get(6)) {
                     setControlTargets(vessels, leader, leadControl);
                 } else {
-                    setAutopilotTargets(vessels, leader, leadFlightTelemetry, leadControl);
+                    setAutopilotTargets(vessels, leader, leaderState);
                 }
             }
 
-            for (int i=0; i<10; i++) {
-                try {
-                    setActionGroupsOnSquadron(i, leadControl.getActionGroup(i), vessels);
-                } catch (IllegalArgumentException e) {
-                    vessels.remove(i);
-                    logger.error("Caught IllegalArgumentException, removed vessel from squadron" + i);
-                    e.printStackTrace();
-                }
-            }
+            actionGroupSync.sync(vessels, squadronExecutor);
 
-            if (leader.getControl().getActionGroup(5)) {
+            if (actionGroupSync.get(5)) {
                 logger.info("Deploying even chutes");
                 deployChutes(vessels);
 
@@ -150,7 +185,7 @@ public class RunChariot {
                 leadControl.setActionGroup(5, false);
             }
 
-            sleep(leadPollingIntervalMillis);
+            ticker.awaitNextTick();
         }
     }
 
@@ -158,10 +193,10 @@ public class RunChariot {
                                            SpaceCenter.Vessel leader,
                                            SpaceCenter.Control leadControl) {
         logger.info("Applying lead flight control to all squadron vessels.");
-        vessels.parallelStream().forEach(v -> {
+        squadronExecutor.runTick(vessels, v -> {
             SpaceCenter.Control vesselControl = null;
             try {
-                vesselControl = v.getControl();
+                vesselControl = FollowerControlMirror.of(v).getControl();
                 if (!v.equals(leader)) {
 //                    vesselControl.setInputMode(SpaceCenter.ControlInputMode.OVERRIDE);
                     vesselControl.setPitch(leadControl.getPitch());
@@ -170,9 +205,6 @@ public class RunChariot {
                 }
             } catch(RPCException e){
                 e.printStackTrace();
-            } catch(IllegalArgumentException e) {
-                e.printStackTrace();
-                vessels.remove(v);
             } catch (IllegalMonitorStateException e) {
                 e.printStackTrace();
             }
@@ -181,48 +213,38 @@ public class RunChariot {
 
     public static void setAutopilotTargets(List<SpaceCenter.Vessel> vessels,
                                            SpaceCenter.Vessel leader,
-                                           SpaceCenter.Flight leadFlightTelemetry,
-                                           SpaceCenter.Control leadControl) {
+                                           LeaderSnapshot.Frame leaderState) {
         logger.info("Applying lead flight telemetry to autopilot for all squadron vessels.");
-        vessels.parallelStream().forEach(v -> {
+        squadronExecutor.runTick(vessels, v -> {
             if(!v.equals(leader)) {
                 SpaceCenter.Control vesselControl = null;
                 SpaceCenter.AutoPilot vesselAutoPilot = null;
                 try {
-                    vesselControl = v.getControl();
-                    vesselAutoPilot = v.getAutoPilot();
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                    vesselControl = mirror.getControl();
+                    vesselAutoPilot = mirror.getAutoPilot();
                     if (!v.equals(leader)) {
-                        if (tweakAp) {
-                            vesselAutoPilot.setStoppingTime(stoppingTime);
-                            vesselAutoPilot.setDecelerationTime(decelerationTime);
-                            vesselAutoPilot.setTimeToPeak(timeToPeak);
-                            vesselAutoPilot.setAttenuationAngle(attenuationAngle);
-                            vesselAutoPilot.setRollThreshold(rollThreshold);
-                        }
+                        mirror.setProfile(pullers.contains(v) ? pullerProfile : passengerProfile);
                         // stage
-                        if (vesselControl.getCurrentStage() < leadControl.getCurrentStage()) {
+                        if (vesselControl.getCurrentStage() < leaderState.getCurrentStage()) {
                             vesselControl.activateNextStage();
                         }
 
                         // set non-directional controls
-                        setNonDirectionalControls(vesselControl, leadControl);
+                        setNonDirectionalControls(mirror, leaderState);
 
                         // set flight telemetry targets
-                        vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                        // logger.info("lead pitch {}", leadFlightTelemetry.getPitch());
+                        mirror.setTargetPitch(leaderState.getPitch());
+                        // logger.info("lead pitch {}", leaderState.getPitch());
 
-                        vesselAutoPilot.setRollThreshold(rollThreshold);
-                        vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                        // logger.info("lead roll {}", leadFlightTelemetry.getRoll());
+                        mirror.setTargetRoll(leaderState.getRoll());
+                        // logger.info("lead roll {}", leaderState.getRoll());
 
-                        vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                        vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
+                        mirror.setTargetHeading(leaderState.getHeading());
+                        mirror.setTargetDirection(leaderState.getDirection());
                     }
                 } catch(RPCException e){
                     e.printStackTrace();
-                } catch(IllegalArgumentException e) {
-                    e.printStackTrace();
-                    vessels.remove(v);
                 } catch (IllegalMonitorStateException e) {
                     e.printStackTrace();
                 }
@@ -235,13 +257,13 @@ public class RunChariot {
         try {
             logger.info("Squadron on full auto mode, will maintain pitch, roll, heading, and target direction");
 
-            vessels.parallelStream().forEach(v -> {
+            squadronExecutor.runTick(vessels, v -> {
                 if(!v.equals(leader)) {
                     try {
-                        SpaceCenter.AutoPilot vesselAutoPilot = v.getAutoPilot();
-                        vesselAutoPilot.setTargetPitch(4);
-                        vesselAutoPilot.setTargetRoll(0);
-                        v.getControl().setThrottle(0.6F);
+                        FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                        mirror.setTargetPitch(4);
+                        mirror.setTargetRoll(0);
+                        mirror.setThrottle(0.6F);
                     } catch (RPCException e) {
                         e.printStackTrace();
                     }
@@ -252,29 +274,18 @@ public class RunChariot {
         }
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            // vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            // mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
     }
 
-    private static void setActionGroupsOnSquadron(int groupNumber, boolean groupState, List<SpaceCenter.Vessel> squadronVessels) {
-
-        for(SpaceCenter.Vessel vessel : squadronVessels) {
-            try {
-                vessel.getControl().setActionGroup(groupNumber, groupState);
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
     private static void deployChutes(List<SpaceCenter.Vessel> vessels) {
             try {
                 for(SpaceCenter.Vessel v: vessels ) {
@@ -67,19 +67,19 @@ public class RunChariot2 {
 
         List<SpaceCenter.Vessel> vessels = new ArrayList<>();
 
-        List<SpaceCenter.Vessel> potentialPullerList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "sensorBarometer");
+        List<SpaceCenter.Vessel> potentialPullerList = Squadron.getVesselsWithPart(spaceCenter, "sensorBarometer");
         for (SpaceCenter.Vessel vessel : potentialPullerList) {
             logger.info("Setting vessel {} name to ", vessel.getName(), pullerName);
-            vessel.setName(pullerName);
+            VesselIndex.of(spaceCenter).rename(vessel, pullerName);
             spaceCenter.setActiveVessel(vessel);
             vessels.add(vessel);
         }
 
         SpaceCenter.Vessel leader = null;
-        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter, "longAntenna");
         for (SpaceCenter.Vessel vessel : potentialLeadList) {
             logger.info("Setting vessel {} name to ", vessel.getName(), leaderName);
-            vessel.setName(leaderName);
+            VesselIndex.of(spaceCenter).rename(vessel, leaderName);
             leader = vessel;
             vessels.add(vessel);
         }
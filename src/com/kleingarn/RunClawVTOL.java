@@ -2,25 +2,36 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class RunClawVTOL {
 
     final static Logger logger = LoggerFactory.getLogger(RunClawVTOL.class);
     final static String craftName = "vtol ssto claw 01";
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // pods ramp their throttle at this rate, wrapping to 0 above full, until they dock
+    final static float throttleRampPerSecond = 0.01F;
+    final static long throttleRampPeriodMillis = 50;
+    static DockingStateWatcher dockingStateWatcher;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Flight");
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
+        dockingStateWatcher = new DockingStateWatcher(connection);
 
         // assume we are flying already
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
@@ -50,9 +61,9 @@ public class RunClawVTOL {
                     // note: "vessel name" is leader, "vessel name Probe" is probe on engine
                     
                     if (lightStatus) {
-                        changeEngineOrientation(vtolShipAndEngines, "probeCoreOcto2", 1.0F, spaceCenter);
+                        changeEngineOrientation(vtolShipAndEngines, "probeCoreOcto2", 1.0F);
                     } else {
-                        changeEngineOrientation(vtolShipAndEngines, "probeCoreOcto2", -1.0F, spaceCenter);
+                        changeEngineOrientation(vtolShipAndEngines, "probeCoreOcto2", -1.0F);
                     }
                 }
                 sleep(5000);
@@ -64,57 +75,36 @@ public class RunClawVTOL {
 
     private static void changeEngineOrientation(Squadron squadron,
                                                 String controlFromPart,
-                                                float pitch,
-                                                SpaceCenter spaceCenter) {
-        squadron.getSquadronVessels().
-                parallelStream().
-                filter(v -> !v.equals(squadron.getSquadLeader())).
-                forEach
-                    (v -> {
-                        boolean connected = false;
-                        try {
-                            logger.info("Setting {} SAS and SASMode", v.getName());
-                            DockingUtils.setControlFromProbe(v, controlFromPart);
-                            // float reducer = pitch / 10;
-                            float throttleIncrement = 0.005F;
-                            int attempts = 0;
-
-                            while(!connected) {
-                                logger.info("Connected is: {}", connected);
-                                v.getControl().setSAS(true);
-                                v.getControl().setPitch(pitch);
-                                // v.getControl().setSASMode(orientation); // too forceful
-                                // v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
-
-                                if (pitch > 0) {
-                                    if(throttleIncrement * attempts > 1.0F) {
-                                        attempts = 0;
-                                    } else {
-                                        v.getControl().setThrottle(throttleIncrement * attempts++);
-                                    }
-                                } else {
-                                    v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
-                                    if(throttleIncrement * attempts > 1.0F) {
-                                        attempts = 0;
-                                    } else {
-                                        v.getControl().setThrottle(throttleIncrement * attempts++);
-                                    }
-                                }
-
-                                Squadron vessels = Squadron.buildSquadron(craftName, craftName, spaceCenter);
-                                logger.info("Vessels in squadron is: " + vessels.getSquadronVessels().size());
-                                if (vessels.getSquadronVessels().size() == 0) {
-                                    logger.info("Single vessel found, breaking loop");
-                                    connected = true;
-                                }
-                                sleep(500);
-                            }
-                        } catch (IllegalArgumentException e) {
-                            e.printStackTrace();
-                        } catch (RPCException e) {
-                            e.printStackTrace();
-                        }
-                    });
+                                                float pitch) {
+        List<CompletableFuture<SpaceCenter.Vessel>> docked = new ArrayList<>();
+        for (SpaceCenter.Vessel v : squadron.getSquadronVessels()) {
+            if (v.equals(squadron.getSquadLeader())) {
+                continue;
+            }
+            try {
+                logger.info("Setting {} SAS and SASMode", v.getName());
+                DockingUtils.setControlFromProbe(v, controlFromPart);
+                v.getControl().setSAS(true);
+                v.getControl().setPitch(pitch);
+                // v.getControl().setSASMode(orientation); // too forceful
+                if (pitch <= 0) {
+                    v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
+                }
+                // done the moment a port or claw connects, the throttle ramps until then
+                docked.add(dockingStateWatcher.watch(v));
+                dockingStateWatcher.rampThrottle(v, throttleRampPerSecond, throttleRampPeriodMillis);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            } catch (RPCException | StreamException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            CompletableFuture.allOf(docked.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // a pod destroyed on the way back, the rest still docked
+            logger.error("Not every pod docked: {}", e.getCause().getMessage());
+        }
     }
 
     private static void sleep (int sleepTimeInmillis) {
@@ -33,6 +33,7 @@ public class RunColorAltitude {
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         Drawing drawing = Drawing.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         // mk2SpacePlaneAdapter
         // mk2Cockpit.Inline
@@ -45,8 +46,9 @@ public class RunColorAltitude {
         // mk2FuselageShortLiquid
 
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
-        List<SpaceCenter.Part> parts = vessel.getParts().getAll();
-        DockingUtils.printParts(parts);
+        PartGraph graph = PartGraph.of(vessel);
+        List<SpaceCenter.Part> parts = graph.getParts();
+        DockingUtils.printParts(graph, parts);
 
         List<String> pitchIndicatorPartNames = new ArrayList<>();
         pitchIndicatorPartNames.add("noseCone");
@@ -63,9 +65,9 @@ public class RunColorAltitude {
         List<SpaceCenter.Part> pitchIndicatorParts = new ArrayList<>();
         for(SpaceCenter.Part part : parts) {
             for(String partName : pitchIndicatorPartNames) {
-                if (part.getName().equals(partName)) {
+                if (graph.getName(part).equals(partName)) {
                     pitchIndicatorParts.add(part);
-                    logger.info("Matching part {} found, adding to pitchIndicatorParts", part.getName());
+                    logger.info("Matching part {} found, adding to pitchIndicatorParts", graph.getName(part));
                 }
             }
         }
@@ -214,7 +216,7 @@ public class RunColorAltitude {
                         vessel.getControl().setLights(true);
                         pitchIndicatorParts.parallelStream().forEach(p -> {
                             try {
-                                logger.info("Part {} is a pitch indicator, checking for flash", p.getName());
+                                logger.info("Part {} is a pitch indicator, checking for flash", graph.getName(p));
                                 p.setHighlighted(false);
                                 p.setHighlightColor(notLevelCustomHighlightColor);
                                 p.setHighlighted(true);
@@ -0,0 +1,85 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.StreamException;
+import krpc.client.services.KRPC;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+public class RunEscortedBombingRun {
+
+    final static Logger logger = LoggerFactory.getLogger(Squadron.class);
+
+    final static String leaderName = "bomber_lead";
+    final static String bomberSquadronName = "bomber";
+    final static String escortSquadronName = "escort";
+
+    final static int bomberPollingIntervalMillis = 100;
+    final static int escortPollingIntervalMillis = 50;
+
+    final static int followerTickTimeoutMillis = 500;
+    final static int connectionPoolSize = 4;
+
+    // escorts fly above the bombers
+    final static float escortPitchOffset = 5.0F;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException, InterruptedException {
+        // init
+        Connection connection = Connection.newInstance("Squadron flight");
+        KRPC krpc = KRPC.newInstance(connection);
+        SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
+        logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+
+        // both squadrons follow the active vessel
+        Squadron bombers = Squadron.buildSquadron(bomberSquadronName, leaderName, spaceCenter);
+        Squadron escort = Squadron.buildSquadron(escortSquadronName, leaderName, spaceCenter);
+        SpaceCenter.Vessel leader = bombers.getSquadLeader();
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+
+        SquadronExecutor executor = new SquadronExecutor(
+                "fleet",
+                bombers.getSquadronVessels().size() + escort.getSquadronVessels().size(),
+                followerTickTimeoutMillis);
+        SquadronRegistry registry = new SquadronRegistry(
+                executor,
+                KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize));
+        registry.register(bombers);
+        registry.register(escort);
+
+        Squadron.MembershipListener lossReporter = (squad, vessel, cause) ->
+                logger.warn("Squadron {} lost a vessel, {} left", squad.getSquadronName(), squad.getSquadronVessels().size());
+        bombers.addMembershipListener(lossReporter);
+        escort.addMembershipListener(lossReporter);
+
+        registry.start(bomberSquadronName, bomberPollingIntervalMillis, (squad, squadronExecutor) ->
+                followLeader(squad, squadronExecutor, leaderSnapshot.refresh(), 0));
+        registry.start(escortSquadronName, escortPollingIntervalMillis, (squad, squadronExecutor) ->
+                followLeader(squad, squadronExecutor, leaderSnapshot.refresh(), escortPitchOffset));
+
+        registry.awaitAll();
+    }
+
+    public static void followLeader(Squadron squad,
+                                    SquadronExecutor executor,
+                                    LeaderSnapshot.Frame leaderState,
+                                    float pitchOffset) {
+        // lost vessels are evicted by the executor
+        executor.runTick(squad, v -> {
+            if (v.equals(squad.getSquadLeader())) {
+                return;
+            }
+            FollowerControlMirror mirror = FollowerControlMirror.of(v);
+            mirror.setBrakes(leaderState.getBrakes());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
+            mirror.setTargetPitch(leaderState.getPitch() + pitchOffset);
+            mirror.setTargetRoll(leaderState.getRoll());
+            mirror.setTargetHeading(leaderState.getHeading());
+            mirror.engage();
+        });
+    }
+}
@@ -9,6 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 public class RunFanManDualProp {
 
@@ -30,21 +31,24 @@ public class RunFanManDualProp {
         // valor_lead part mk3Cockpit.Shuttle
         SpaceCenter.Vessel lead = spaceCenter.getActiveVessel();
         logger.info("Setting lead vessel {} name to {}", lead.getName(), leaderName);
-        lead.setName(leaderName);
+        VesselIndex.of(spaceCenter).rename(lead, leaderName);
 
         // decouple the props and rename them
         spaceCenter.getActiveVessel().getControl().activateNextStage();
 
-        List<SpaceCenter.Vessel> leftProps = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        Map<String, List<SpaceCenter.Vessel>> vesselsByPart =
+                Squadron.getVesselsWithParts(spaceCenter, "longAntenna", "ladder1");
+
+        List<SpaceCenter.Vessel> leftProps = vesselsByPart.get("longAntenna");
         for (SpaceCenter.Vessel vessel : leftProps) {
             logger.info("Setting left prop vessel {} name to {}", vessel.getName(), leftPropName);
-            vessel.setName(leftPropName);
+            VesselIndex.of(spaceCenter).rename(vessel, leftPropName);
         }
 
-        List<SpaceCenter.Vessel> rightProps = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "ladder1");
+        List<SpaceCenter.Vessel> rightProps = vesselsByPart.get("ladder1");
         for (SpaceCenter.Vessel vessel : rightProps) {
             logger.info("Setting right prop vessel {} name to {}", vessel.getName(), rightPropName);
-            vessel.setName(rightPropName);
+            VesselIndex.of(spaceCenter).rename(vessel, rightPropName);
         }
         logger.info("Lead and props identified.");
         spaceCenter.setActiveVessel(lead);
@@ -55,6 +59,7 @@ public class RunFanManDualProp {
                 spaceCenter);
 
         int leadPollingIntervalMillis = 500;
+        SquadronExecutor squadronExecutor = SquadronExecutor.forSquadron(squad, 500);
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl(); // initialized later in while loop
@@ -78,10 +83,10 @@ public class RunFanManDualProp {
 
                 // identify probeCoreCube
                 // part with sensorBarometer
-                List<SpaceCenter.Vessel> centralPivotVessel = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "sensorBarometer");
+                List<SpaceCenter.Vessel> centralPivotVessel = Squadron.getVesselsWithPart(spaceCenter, "sensorBarometer");
                 for (SpaceCenter.Vessel vessel : centralPivotVessel) {
                     logger.info("Setting right prop vessel {} name to {}", vessel.getName(), centralPivotName);
-                    vessel.setName(centralPivotName);
+                    VesselIndex.of(spaceCenter).rename(vessel, centralPivotName);
                 }
                 squad.addVesselToSquadron(centralPivotVessel.get(0));
 
@@ -94,7 +99,7 @@ public class RunFanManDualProp {
             }
 
             try {
-                squad.getSquadronVessels().parallelStream().forEach(v -> {
+                squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
 
                     try {
 
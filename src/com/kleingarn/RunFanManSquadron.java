@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -11,8 +12,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.List;
 
-import static java.util.stream.Collectors.toList;
-
 public class RunFanManSquadron {
 
     final static Logger logger = LoggerFactory.getLogger(Squadron.class);
@@ -20,6 +19,14 @@ public class RunFanManSquadron {
     static String leaderName = "triplane";
     final static String squadronName = "triplane";
 
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+    // every squadron vessel but the one being flown, recomputed only when the vessel list changes
+    static RoleSet kamikazes;
+
     // v1 impl, listen for changes from leader using callbacks, unused here
     // squad.getAndSetUpdatesFromLeader(spaceCenter, connection);
 
@@ -43,7 +50,14 @@ public class RunFanManSquadron {
 
     final static boolean tweakAp = true;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // pushed to each follower once, FollowerControlMirror skips it while the vessel already has it
+    final static AutopilotProfile followerProfile = new AutopilotProfile("tuned")
+            .withStoppingTime(stoppingTime)
+            .withDecelerationTime(decelerationTime)
+            .withTimeToPeak(timeToPeak)
+            .withAttenuationAngle(attenuationAngle);
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -54,12 +68,21 @@ public class RunFanManSquadron {
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
 
         int leadPollingIntervalMillis = 1000;
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        ActionGroupSync actionGroupSync = new ActionGroupSync(connection, leader);
+        kamikazes = new RoleSet(connection, spaceCenter, "kamikaze", (v, name, activeVessel) ->
+                name.contains(squadronName)
+                        && !name.contains("Debris")
+                        && !v.equals(activeVessel));
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -75,126 +98,110 @@ public class RunFanManSquadron {
         List<SpaceCenter.Decoupler> allDecouplers = spaceCenter.getActiveVessel().getParts().getDecouplers();
         logger.info("Current vessel has " + allDecouplers.size() + " decouplers");
 
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
         while (true) {
 
             leadControl = leader.getControl();
-//            leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
-            // setAutopilotTargets(squad, leader, leadFlightTelemetry, leadControl);
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            // setAutopilotTargets(squad, leader, leaderState);
 
-            for (int i=0; i<10; i++) {
-                setActionGroupsOnSquadron(i, leadControl.getActionGroup(i), vessels);
-            }
+            actionGroupSync.sync(vessels, squadronExecutor);
 
-            if (leader.getControl().getActionGroup(5)) {
+            if (actionGroupSync.get(5)) {
                 logger.info("Deploying even chutes");
                 deployChutes(spaceCenter, leader, true);
                 leadControl.setActionGroup(5, false);
             }
 
-            if (leader.getControl().getActionGroup(6)) {
+            if (actionGroupSync.get(6)) {
                 logger.info("Deploying odd chutes");
                 deployChutes(spaceCenter, leader, false);
                 leadControl.setActionGroup(6, false);
             }
 
-            if (leader.getControl().getActionGroup(7)) {
-                setTargetPitchOnKamikazes(spaceCenter, leadFlightTelemetry);
+            if (actionGroupSync.get(7)) {
+                setTargetPitchOnKamikazes(kamikazes, leaderState);
                 // leadControl.setActionGroup(7, false);
             }
 
-            sleep(leadPollingIntervalMillis);
+            ticker.awaitNextTick();
         }
     }
 
     public static void setAutopilotTargets(Squadron squad,
                                            SpaceCenter.Vessel leader,
-                                           SpaceCenter.Flight leadFlightTelemetry,
-                                           SpaceCenter.Control leadControl) {
-        squad.getSquadronVessels().parallelStream().forEach(v -> {
+                                           LeaderSnapshot.Frame leaderState) {
+        squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
             SpaceCenter.Control vesselControl = null;
             SpaceCenter.AutoPilot vesselAutoPilot = null;
             try {
-                vesselControl = v.getControl();
-                vesselAutoPilot = v.getAutoPilot();
+                FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                vesselControl = mirror.getControl();
+                vesselAutoPilot = mirror.getAutoPilot();
                 if (!v.equals(leader)) {
                     if (tweakAp) {
-                        vesselAutoPilot.setStoppingTime(stoppingTime);
-                        vesselAutoPilot.setDecelerationTime(decelerationTime);
-                        vesselAutoPilot.setTimeToPeak(timeToPeak);
-                        vesselAutoPilot.setAttenuationAngle(attenuationAngle);
+                        mirror.setProfile(followerProfile);
                     }
                     // stage
-                    if (vesselControl.getCurrentStage() < leadControl.getCurrentStage()) {
+                    if (vesselControl.getCurrentStage() < leaderState.getCurrentStage()) {
                         vesselControl.activateNextStage();
                     }
 
                     // set non-directional controls
-                    setNonDirectionalControls(vesselControl, leadControl);
+                    setNonDirectionalControls(mirror, leaderState);
 
                     // set flight telemetry targets
-                    vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                    logger.info("lead pitch {}", leadFlightTelemetry.getPitch());
+                    mirror.setTargetPitch(leaderState.getPitch());
+                    logger.info("lead pitch {}", leaderState.getPitch());
 
-                    vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                    logger.info("lead roll {}", leadFlightTelemetry.getRoll());
+                    mirror.setTargetRoll(leaderState.getRoll());
+                    logger.info("lead roll {}", leaderState.getRoll());
 
-                    vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                    vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
-                    vesselAutoPilot.engage();
+                    mirror.setTargetHeading(leaderState.getHeading());
+                    mirror.setTargetDirection(leaderState.getDirection());
+                    mirror.engage();
                 }
             } catch(RPCException e){
                 e.printStackTrace();
             } catch(IllegalArgumentException e) {
-                e.printStackTrace();
-                squad.removeVesselFromSquadron(v);
+                squadronExecutor.markLost(v, squad, e);
             }
         });
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
     }
 
     // set autopilot on all vessels other than the active vessel to target pitch 0
-    public static void setTargetPitchOnKamikazes(SpaceCenter spaceCenter, SpaceCenter.Flight leadFlightTelemetry) {
+    // leader heading and direction come from the tick's frame, not one RPC per kamikaze
+    public static void setTargetPitchOnKamikazes(RoleSet kamikazes, LeaderSnapshot.Frame leaderState) {
         try {
-            List<SpaceCenter.Vessel> allVessels = spaceCenter.getVessels();
-            List<SpaceCenter.Vessel> kamikazeSquadron = allVessels.stream().filter(v -> {
+            squadronExecutor.runTick(kamikazes.get(), v -> {
                 try {
-                    return (v.getName().contains(squadronName)
-                            && !v.getName().contains("Debris")
-                            && !v.equals(spaceCenter.getActiveVessel())
-                    );
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;
-            }).collect(toList());
-            logger.info("Kamikaze squadron vessels identified");
-            Squadron.printActiveVesselsFromList(kamikazeSquadron);
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
 
-            kamikazeSquadron.parallelStream().forEach(v -> {
-                try {
-                    SpaceCenter.AutoPilot vesselAutoPilot = v.getAutoPilot();
-                    SpaceCenter.Control vesselControl = v.getControl();
+                    mirror.setTargetPitch(-20);
+                    mirror.setTargetRoll(0);
+                    mirror.setTargetHeading(leaderState.getHeading());
+                    mirror.setTargetDirection(leaderState.getDirection());
 
-                    vesselAutoPilot.setTargetPitch(-20);
-                    vesselAutoPilot.setTargetRoll(0);
-                    vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                    vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
-
-                    vesselControl.setThrottle(0.75F);
-                    vesselAutoPilot.engage();
+                    mirror.setThrottle(0.75F);
+                    mirror.engage();
                 } catch (RPCException e) {
                     e.printStackTrace();
+                } catch (IllegalArgumentException e) {
+                    // destroyed, drop it from the set before the vessel list stream catches up
+                    FollowerControlMirror.forget(v);
+                    kamikazes.invalidate();
                 }
             });
         } catch (RPCException e) {
@@ -203,17 +210,6 @@ public class RunFanManSquadron {
     }
 
 
-    private static void setActionGroupsOnSquadron(int groupNumber, boolean groupState, List<SpaceCenter.Vessel> squadronVessels) {
-
-        for(SpaceCenter.Vessel vessel : squadronVessels) {
-            try {
-                vessel.getControl().setActionGroup(groupNumber, groupState);
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
     private static void deployChutes(SpaceCenter spaceCenter, SpaceCenter.Vessel vessel, boolean even) {
         try {
             spaceCenter.setActiveVessel(vessel);
@@ -10,6 +10,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 public class RunFlyingIBeamRevolver {
 
@@ -33,28 +34,31 @@ public class RunFlyingIBeamRevolver {
         // ladder1
         // longAntenna
 
-//        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "mk2Cockpit.Inline").get(0);
+//        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter, "mk2Cockpit.Inline").get(0);
 //        logger.info("Setting lead vessel {} name to {}", lead.getName(), leaderName);
 //        lead.setName(leaderName);
 
-        List<SpaceCenter.Vessel> leadVessels = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "mk2Cockpit.Inline");
+        Map<String, List<SpaceCenter.Vessel>> vesselsByPart =
+                Squadron.getVesselsWithParts(spaceCenter, "mk2Cockpit.Inline", "ladder1", "longAntenna");
+
+        List<SpaceCenter.Vessel> leadVessels = vesselsByPart.get("mk2Cockpit.Inline");
         for (SpaceCenter.Vessel vessel : leadVessels) {
             logger.info("Setting lead vessel {} name to {}", vessel.getName(), leaderName);
-            vessel.setName(leaderName);
+            VesselIndex.of(spaceCenter).rename(vessel, leaderName);
             // there can be only one
             break;
         }
 
-        List<SpaceCenter.Vessel> leftGuns = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "ladder1");
+        List<SpaceCenter.Vessel> leftGuns = vesselsByPart.get("ladder1");
         for (SpaceCenter.Vessel vessel : leftGuns) {
             logger.info("Setting left gun vessel {} name to {}", vessel.getName(), leftGunName);
-            vessel.setName(leftGunName);
+            VesselIndex.of(spaceCenter).rename(vessel, leftGunName);
         }
 
-        List<SpaceCenter.Vessel> rightGuns = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> rightGuns = vesselsByPart.get("longAntenna");
         for (SpaceCenter.Vessel vessel : rightGuns) {
             logger.info("Setting right gun vessel {} name to {}", vessel.getName(), rightGunName);
-            vessel.setName(rightGunName);
+            VesselIndex.of(spaceCenter).rename(vessel, rightGunName);
         }
 
         Squadron squad = Squadron.buildSquadron(
@@ -63,6 +67,7 @@ public class RunFlyingIBeamRevolver {
                 spaceCenter);
 
         int leadPollingIntervalMillis = 1000;
+        SquadronExecutor squadronExecutor = SquadronExecutor.forSquadron(squad, 500);
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl(); // initialized later in while loop
@@ -94,7 +99,7 @@ public class RunFlyingIBeamRevolver {
             final int tempThreshold = 7000;
             final Triplet<Double, Double, Double> customHighlightColor = new Triplet<>(1.0,0.00,0.00);
 
-            squad.getSquadronVessels().parallelStream().forEach(v -> {
+            squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                 try {
                     if (!v.equals(leader)) {
                         SpaceCenter.Control vesselControl = v.getControl();
@@ -2,38 +2,38 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.List;
-
-import static com.kleingarn.FuelUtils.activateNextStageIfFuelEmpty;
-import static com.kleingarn.FuelUtils.getDecoupleableParts;
 
 public class RunFuelTankAutoDecoupler {
 
     final static Logger logger = LoggerFactory.getLogger(Squadron.class);
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // stage this long before the next stage's first tank is predicted to run dry
+    final static long stagingLeadTimeMillis = 250;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Drop tanks automatically");
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         SpaceCenter.Vessel activeVessel = spaceCenter.getActiveVessel();
-        List<SpaceCenter.Part> partsWithDecouplers;
+        // streams every tank once, the loop below makes no RPCs except to stage
+        StageFuelMonitor stageFuelMonitor = new StageFuelMonitor(connection, activeVessel);
+        FuelBurnPredictor fuelBurnPredictor = new FuelBurnPredictor(stageFuelMonitor, stagingLeadTimeMillis);
 
         while (true) {
-            partsWithDecouplers = getDecoupleableParts(activeVessel);
-
             // Requires that staging is properly set as if you were controlling manually
-            if(FuelUtils.areAnyTanksEmpty(activeVessel, partsWithDecouplers)) {
-                activeVessel.getControl().activateNextStage();
-            }
+            // arms staging ahead of burnout, stages right away if a tank is already dry
+            fuelBurnPredictor.update();
             sleep(1000);
         }
     }
@@ -27,23 +27,25 @@ public class RunIBeamRevolver {
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        // decoupled i-beams change the part count, rebuild part graphs when they do
+        PartGraph.useConnection(connection);
 
         // Parts used as identifiers:
         // Mark2Cockpit
         // ladder1
         // longAntenna
 
-        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "ladder1").get(0);
+        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter, "ladder1").get(0);
         logger.info("Setting lead vessel {} name to {}", lead.getName(), leaderName);
-        lead.setName(leaderName);
+        VesselIndex.of(spaceCenter).rename(lead, leaderName);
 
-        List<SpaceCenter.Vessel> leftGuns = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> leftGuns = Squadron.getVesselsWithPart(spaceCenter, "longAntenna");
         for (SpaceCenter.Vessel vessel : leftGuns) {
             logger.info("Setting left gun vessel {} name to {}", vessel.getName(), leftGunName);
-            vessel.setName(leftGunName);
+            VesselIndex.of(spaceCenter).rename(vessel, leftGunName);
         }
 
-//        List<SpaceCenter.Vessel> rightGuns = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+//        List<SpaceCenter.Vessel> rightGuns = Squadron.getVesselsWithPart(spaceCenter, "longAntenna");
 //        for (SpaceCenter.Vessel vessel : rightGuns) {
 //            logger.info("Setting right gun vessel {} name to {}", vessel.getName(), rightGunName);
 //            vessel.setName(rightGunName);
@@ -55,6 +57,7 @@ public class RunIBeamRevolver {
                 spaceCenter);
 
         int leadPollingIntervalMillis = 1000;
+        SquadronExecutor squadronExecutor = SquadronExecutor.forSquadron(squad, 500);
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl(); // initialized later in while loop
@@ -86,7 +89,7 @@ public class RunIBeamRevolver {
             final int tempThreshold = 7000;
             final Triplet<Double, Double, Double> customHighlightColor = new Triplet<>(1.0,0.00,0.00);
 
-            squad.getSquadronVessels().parallelStream().forEach(v -> {
+            squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                 try {
                     if (!v.equals(leader)) {
                         SpaceCenter.Control vesselControl = v.getControl();
@@ -102,19 +105,23 @@ public class RunIBeamRevolver {
                             }
 
                             // if iBeam is being heated, decouple
-                            List<SpaceCenter.Decoupler> allDecouplers = v.getParts().getDecouplers();
-                            logger.info("Current vessel " + v.getName() + " has " + allDecouplers.size() + " decouplers");
+                            // decouplers and their children come from the part graph, rebuilt only after a decouple
+                            PartGraph graph = PartGraph.of(v);
+                            logger.info("Current vessel " + v.getName() + " has " + graph.withDecoupler().size() + " decouplers");
 
-                            int totalDecouplerCount = allDecouplers.size();
+                            int totalDecouplerCount = graph.withDecoupler().size();
                             while(totalDecouplerCount > 1) {
                                 logger.info("Vessel {} has {} decouplers", v.getName(), totalDecouplerCount);
-                                for (SpaceCenter.Decoupler decoupler : allDecouplers) {
-                                    List<SpaceCenter.Part> children = decoupler.getPart().getChildren();
+                                graph = PartGraph.of(v);
+                                for (SpaceCenter.Part decouplerPart : graph.withDecoupler()) {
+                                    SpaceCenter.Decoupler decoupler = graph.getDecoupler(decouplerPart);
+                                    List<SpaceCenter.Part> children = graph.getChildren(decouplerPart);
 
                                     if(children.size() == 0) {
                                         logger.warn("Decoupling empty decoupler.");
                                         try {
                                             decoupler.decouple();
+                                            PartGraph.invalidate(v);
                                             totalDecouplerCount--;
                                         } catch (UnsupportedOperationException e) {
                                             logger.error("Error while decoupling");
@@ -125,7 +132,7 @@ public class RunIBeamRevolver {
 
                                         int multiplier = 10000;
                                         logger.info("child part {} thermal conduction: {}, convection: {}, radiation {}, skinToInt {}",
-                                                childPart.getName(),
+                                                graph.getName(childPart),
                                                 childPart.getThermalConductionFlux() * multiplier,
                                                 childPart.getThermalConvectionFlux() * multiplier,
                                                 childPart.getThermalRadiationFlux() * multiplier,
@@ -134,11 +141,12 @@ public class RunIBeamRevolver {
                                         // negative value of skinToInt indicates the skin is heating up
                                         // child part structuralIBeam2 thermal conduction: 53.19811, convection: -1260.2046, radiation -12968.449, skinToInt 12332.819
                                         if(childPart.getThermalSkinToInternalFlux() * multiplier > tempThreshold) {
-                                            logger.info("Decoupling {} skinToInt is {}", decoupler.getPart().getName(), childPart.getThermalSkinToInternalFlux() * multiplier);
+                                            logger.info("Decoupling {} skinToInt is {}", graph.getName(decouplerPart), childPart.getThermalSkinToInternalFlux() * multiplier);
                                             try {
                                                 childPart.setHighlighted(true);
                                                 childPart.setHighlightColor(customHighlightColor);
                                                 decoupler.decouple();
+                                                PartGraph.invalidate(v);
                                                 totalDecouplerCount--;
                                                 // sleep(250);
                                             } catch (UnsupportedOperationException e) {
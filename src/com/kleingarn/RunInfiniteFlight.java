@@ -78,6 +78,7 @@ public class RunInfiniteFlight {
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         // assume we are flying already
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
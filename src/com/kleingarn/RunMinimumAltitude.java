@@ -27,6 +27,7 @@ public class RunMinimumAltitude {
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         // assume we are flying already
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
@@ -22,6 +22,7 @@ public class RunParadrop {
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
 
@@ -41,24 +42,24 @@ public class RunParadrop {
 
                 // get parts in stage
 
-                SpaceCenter.Parts allParts = vessel.getParts();
-                DockingUtils.printParts(allParts.getAll());
-                List<SpaceCenter.Part> partsInCurrentStage = allParts.inStage(currentStage - 1);
+                // rebuilt only when a drop changed the part count
+                PartGraph graph = PartGraph.of(vessel);
+                DockingUtils.printParts(graph, graph.getParts());
+                List<SpaceCenter.Part> partsInCurrentStage = graph.inStage(currentStage - 1);
 
                 for(SpaceCenter.Part p : partsInCurrentStage) {
-                    logger.info("Part in current stage is {}", p.getName());
+                    logger.info("Part in current stage is {}", graph.getName(p));
 //                    [main] INFO com.kleingarn.Squadron - Part in current stage is Separator.0
 //                            [main] INFO com.kleingarn.Squadron - Part in current stage is kerbalEVAfemale
-                    if(p.getName().contains("kerbalEVA")) {
-                        logger.info("In current stage for {}", p.getName());
+                    if(graph.getName(p).contains("kerbalEVA")) {
+                        logger.info("In current stage for {}", graph.getName(p));
 
-                        List<SpaceCenter.Parachute> parachutes = allParts.getParachutes();
-
-                        for (SpaceCenter.Parachute parachute : parachutes) {
-                            if(parachute.getPart().getStage() == currentStage) {
+                        for (SpaceCenter.Part parachutePart : graph.withParachute()) {
+                            if(graph.getStage(parachutePart) == currentStage) {
                                 logger.info("Deploying parachute in stage");
-                                parachute.deploy();
+                                graph.getParachute(parachutePart).deploy();
                                 vessel.getControl().activateNextStage();
+                                PartGraph.invalidate(vessel);
                             }
                         }
 //                        List<SpaceCenter.Part> partsOnKerbal = p.getChildren();
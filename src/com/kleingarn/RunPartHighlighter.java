@@ -25,11 +25,14 @@ public class RunPartHighlighter {
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
 
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
 
 
-        List<SpaceCenter.Decoupler> decouplers = vessel.getParts().getDecouplers();
+        // decoupler parts and their children, read once instead of every tick
+        PartGraph graph = PartGraph.of(vessel);
+        List<SpaceCenter.Part> decouplers = graph.withDecoupler();
 
         List<SpaceCenter.Part> iBeams = DockingUtils.getSpecificPartsOnVessel(vessel, "structuralIBeam2");
 
@@ -41,16 +44,16 @@ public class RunPartHighlighter {
 
         while(true) {
             if(vessel.getControl().getActionGroup(5)) {
-                for (SpaceCenter.Decoupler decoupler : decouplers) {
-                    List<SpaceCenter.Part> children = decoupler.getPart().getChildren();
+                for (SpaceCenter.Part decoupler : decouplers) {
+                    List<SpaceCenter.Part> children = graph.getChildren(decoupler);
                     for (SpaceCenter.Part childPart : children) {
                         childPart.setHighlightColor(customHighlightColor);
                         childPart.setHighlighted(true);
                     }
                 }
             } else {
-                for (SpaceCenter.Decoupler decoupler : decouplers) {
-                    List<SpaceCenter.Part> children = decoupler.getPart().getChildren();
+                for (SpaceCenter.Part decoupler : decouplers) {
+                    List<SpaceCenter.Part> children = graph.getChildren(decoupler);
                     for (SpaceCenter.Part childPart : children) {
                         childPart.setHighlighted(false);
                     }
@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -9,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
 
 public class RunSpaceSquadron {
@@ -18,6 +20,12 @@ public class RunSpaceSquadron {
     static String leaderName = "lead";
     final static String squadronName = "air";
 
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+
     // v1 impl, listen for changes from leader using callbacks, unused here
     // squad.getAndSetUpdatesFromLeader(spaceCenter, connection);
 
@@ -48,21 +56,35 @@ public class RunSpaceSquadron {
 
     final static boolean tweakAp = false;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // pushed to each follower once, FollowerControlMirror skips it while the vessel already has it
+    final static AutopilotProfile followerProfile = tweakAp
+            ? new AutopilotProfile("tuned")
+                    .withStoppingTime(stoppingTime)
+                    .withDecelerationTime(decelerationTime)
+                    .withTimeToPeak(timeToPeak)
+                    .withAttenuationAngle(attenuationAngle)
+                    .withRollThreshold(rollThreshold)
+            : new AutopilotProfile("default").withRollThreshold(rollThreshold);
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
 
-        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna").get(0);
+        SpaceCenter.Vessel lead = Squadron.getVesselsWithPart(spaceCenter, "longAntenna").get(0);
         logger.info("Setting lead vessel {} name to {}", lead.getName(), leaderName);
-        lead.setName(leaderName);
+        VesselIndex.of(spaceCenter).rename(lead, leaderName);
 
         Squadron squad = Squadron.buildSquadron(
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
 
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
@@ -71,7 +93,19 @@ public class RunSpaceSquadron {
             ap.engage();
         }
         SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        ActionGroupSync actionGroupSync = new ActionGroupSync(connection, leader);
+        StagingSynchroniser stagingSynchroniser = new StagingSynchroniser(connection, spaceCenter, leader);
+        squad.addMembershipListener((s, vessel, cause) -> stagingSynchroniser.forget(vessel));
+
+        // discrete controls reach the followers on the change, the loop below keeps polling as a backstop
+        // SAS isn't mirrored here, throttle is pinned in orbital mode and staging is synced by the loop
+        LeaderEventBus leaderEvents = new LeaderEventBus(connection, leader);
+        leaderEvents.propagateTo(squad, followerTickTimeoutMillis, EnumSet.of(
+                LeaderEventBus.EventType.GEAR,
+                LeaderEventBus.EventType.BRAKES,
+                LeaderEventBus.EventType.LIGHTS,
+                LeaderEventBus.EventType.ACTION_GROUP));
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -85,105 +119,67 @@ public class RunSpaceSquadron {
         List<SpaceCenter.Decoupler> allDecouplers = spaceCenter.getActiveVessel().getParts().getDecouplers();
         logger.info("Current vessel has " + allDecouplers.size() + " decouplers");
 
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
         while (true) {
 
             leadControl = leader.getControl();
-            if (leader.getControl().getActionGroup(7)) {
+            actionGroupSync.refresh();
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            if (actionGroupSync.get(7)) {
                 vessels.add(leader);
-                leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
-                setAutopilotOrbitalTargets(vessels, leadFlightTelemetry);
+                setAutopilotOrbitalTargets(vessels, leaderState);
             } else {
                 vessels.remove(leader);
-                setAutopilotTargets(squad, leader, leadFlightTelemetry, leadControl);
+                setAutopilotTargets(squad, leader, leaderState);
             }
 
-            for (int i=0; i<10; i++) {
-                setActionGroupsOnSquadron(i, leadControl.getActionGroup(i), vessels);
-            }
+            actionGroupSync.sync(vessels, squadronExecutor);
 
-            if (leader.getControl().getActionGroup(5)) {
+            if (actionGroupSync.get(5)) {
                 logger.info("Deploying even chutes");
                 deployChutes(spaceCenter, leader, true);
                 leadControl.setActionGroup(5, false);
             }
 
-            if (leader.getControl().getActionGroup(6)) {
+            if (actionGroupSync.get(6)) {
                 logger.info("Deploying odd chutes");
                 deployChutes(spaceCenter, leader, false);
                 leadControl.setActionGroup(6, false);
             }
 
-            activateStagesBasedOnLeader(spaceCenter, squad, lead);
-
-            sleep(leadPollingIntervalMillis);
-        }
-    }
-
-    public static void activateStagesBasedOnLeader(SpaceCenter spaceCenter, Squadron squad, SpaceCenter.Vessel leader) {
-
-        for(SpaceCenter.Vessel v : squad.getSquadronVessels()) {
-            try {
-                SpaceCenter.Control leadControl = leader.getControl();
-                SpaceCenter.Control vesselControl = v.getControl();
-
-                // stage
-                logger.info("{} current stage is {}", v.getName(), vesselControl.getCurrentStage());
-                logger.info("lead current stage is {}", leadControl.getCurrentStage());
+            stagingSynchroniser.sync(squad, leaderState.getCurrentStage());
 
-                if (vesselControl.getCurrentStage() > leadControl.getCurrentStage()) {
-                    spaceCenter.setActiveVessel(v);
-                    vesselControl.activateNextStage();
-                    logger.info("Activating stage {} on vessel {}", vesselControl.getCurrentStage(), v.getName());
-                }
-            } catch (RPCException e) {
-                e.printStackTrace();
-            } catch (UnsupportedOperationException e) {
-                e.printStackTrace();
-            }
-        }
-        try {
-            spaceCenter.setActiveVessel(leader);
-        } catch (RPCException e) {
-            e.printStackTrace();
+            ticker.awaitNextTick();
         }
     }
 
-
     public static void setAutopilotTargets(Squadron squad,
                                            SpaceCenter.Vessel leader,
-                                           SpaceCenter.Flight leadFlightTelemetry,
-                                           SpaceCenter.Control leadControl) {
+                                           LeaderSnapshot.Frame leaderState) {
         try {
-            squad.getSquadronVessels().parallelStream().forEach(v -> {
+            squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                 SpaceCenter.Control vesselControl = null;
                 SpaceCenter.AutoPilot vesselAutoPilot = null;
                 try {
-                    vesselControl = v.getControl();
-                    vesselAutoPilot = v.getAutoPilot();
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                    vesselControl = mirror.getControl();
+                    vesselAutoPilot = mirror.getAutoPilot();
                     if (!v.equals(leader)) {
-                        if (tweakAp) {
-                            vesselAutoPilot.setStoppingTime(stoppingTime);
-                            vesselAutoPilot.setDecelerationTime(decelerationTime);
-                            vesselAutoPilot.setTimeToPeak(timeToPeak);
-                            vesselAutoPilot.setAttenuationAngle(attenuationAngle);
-                            vesselAutoPilot.setRollThreshold(rollThreshold);
-                        }
+                        mirror.setProfile(followerProfile);
 
                         // set non-directional controls
-                        setNonDirectionalControls(vesselControl, leadControl);
+                        setNonDirectionalControls(mirror, leaderState);
 
                         // set flight telemetry targets
-                        vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                        vesselAutoPilot.setRollThreshold(rollThreshold);
-                        vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                        vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                        vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
+                        mirror.setTargetPitch(leaderState.getPitch());
+                        mirror.setTargetRoll(leaderState.getRoll());
+                        mirror.setTargetHeading(leaderState.getHeading());
+                        mirror.setTargetDirection(leaderState.getDirection());
                     }
                 } catch (RPCException e) {
                     e.printStackTrace();
                 } catch (IllegalArgumentException e) {
-                    e.printStackTrace();
-                    squad.removeVesselFromSquadron(v);
+                    squadronExecutor.markLost(v, squad, e);
                 } catch (IllegalMonitorStateException e) {
                     e.printStackTrace();
                 }
@@ -195,37 +191,38 @@ public class RunSpaceSquadron {
     }
 
     // set autopilot on all vessels other than the active vessel to target pitch 0
-    public static void setAutopilotOrbitalTargets(List<SpaceCenter.Vessel> vessels, SpaceCenter.Flight leadFlightTelemetry) {
+    public static void setAutopilotOrbitalTargets(List<SpaceCenter.Vessel> vessels, LeaderSnapshot.Frame leaderState) {
         try {
             logger.info("Squadron on full auto mode, will maintain pitch, roll, heading, and target direction");
-            vessels.parallelStream().forEach(v -> {
+            squadronExecutor.runTick(vessels, v -> {
                 try {
 
-                    v.getControl().setThrottle(0.95F);
-                    SpaceCenter.AutoPilot vesselAutoPilot = v.getAutoPilot();
-                    vesselAutoPilot.setTargetRoll(0);
-                    vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                    vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                    mirror.setThrottle(0.95F);
+                    mirror.setTargetRoll(0);
+                    mirror.setTargetHeading(leaderState.getHeading());
+                    mirror.setTargetDirection(leaderState.getDirection());
 
-                    SpaceCenter.Flight vesselFlight = v.flight(v.getSurfaceReferenceFrame());
+                    SpaceCenter.Vessel pinnedVessel = mirror.getVessel();
+                    SpaceCenter.Flight vesselFlight = pinnedVessel.flight(pinnedVessel.getSurfaceReferenceFrame());
                     double surfaceAltitude = vesselFlight.getSurfaceAltitude();
 
                     if(surfaceAltitude < 10000) {
-                        vesselAutoPilot.setTargetPitch(90);
+                        mirror.setTargetPitch(90);
                     } else if(surfaceAltitude >= 10000) {
-                        vesselAutoPilot.setTargetPitch(70);
+                        mirror.setTargetPitch(70);
                     } else if(surfaceAltitude >= 20000) {
-                        vesselAutoPilot.setTargetPitch(50);
+                        mirror.setTargetPitch(50);
                     } else if(surfaceAltitude >= 30000) {
-                        vesselAutoPilot.setTargetPitch(25);
+                        mirror.setTargetPitch(25);
                     } else if(surfaceAltitude >= 40000) {
-                        vesselAutoPilot.setTargetPitch(10);
+                        mirror.setTargetPitch(10);
                     } else if(surfaceAltitude >= 50000) {
-                        vesselAutoPilot.setTargetPitch(-30);
+                        mirror.setTargetPitch(-30);
                     } else if(surfaceAltitude >= 60000) {
-                        vesselAutoPilot.setTargetPitch(-5);
+                        mirror.setTargetPitch(-5);
                     } else if(surfaceAltitude >= 70000) {
-                        vesselAutoPilot.setTargetPitch(0);
+                        mirror.setTargetPitch(0);
                     }
                 } catch (RPCException e) {
                     e.printStackTrace();
@@ -236,29 +233,18 @@ public class RunSpaceSquadron {
         }
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            // vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            // mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
     }
 
-    private static void setActionGroupsOnSquadron(int groupNumber, boolean groupState, List<SpaceCenter.Vessel> squadronVessels) {
-
-        for(SpaceCenter.Vessel vessel : squadronVessels) {
-            try {
-                vessel.getControl().setActionGroup(groupNumber, groupState);
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
     private static void deployChutes(SpaceCenter spaceCenter, SpaceCenter.Vessel vessel, boolean even) {
             try {
                 spaceCenter.setActiveVessel(vessel);
@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -18,7 +19,13 @@ public class RunSquadronBombingRun {
     final static String leaderName = "bomber_lead";
     final static String squadronName = "bomber";
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -29,12 +36,18 @@ public class RunSquadronBombingRun {
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
 
         int leadPollingIntervalMillis = 10;
+        // loop runs at 1000 / leadPollingIntervalMillis Hz while manoeuvring, down to minPollingHz when level
+        double minPollingHz = 10;
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
         SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -64,38 +77,48 @@ public class RunSquadronBombingRun {
 
         boolean tweakAp = true;
 
+        // pushed to each follower once, FollowerControlMirror skips it while the vessel already has it
+        AutopilotProfile followerProfile = new AutopilotProfile("tuned")
+                .withStoppingTime(stoppingTime)
+                .withDecelerationTime(decelerationTime)
+                .withTimeToPeak(timeToPeak)
+                .withAttenuationAngle(attenuationAngle);
+
         // v2
         // periodically get all config from leader and apply to squadron
         logger.info("Updating autopilot for squad every {} ms", leadPollingIntervalMillis);
         boolean bombsReleased = false;
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
+        AdaptiveRateController rateController =
+                new AdaptiveRateController(squadronName, minPollingHz, 1000.0 / leadPollingIntervalMillis);
         while (true) {
-            squad.getSquadronVessels().parallelStream().forEach(v -> {
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            rateController.adjust(ticker, leaderState);
+            squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                 SpaceCenter.Control vesselControl = null;
                 SpaceCenter.AutoPilot vesselAutoPilot = null;
                 try {
-                    vesselControl = v.getControl();
-                    vesselAutoPilot = v.getAutoPilot();
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                    vesselControl = mirror.getControl();
+                    vesselAutoPilot = mirror.getAutoPilot();
                     if (!v.equals(leader)) {
                         if (tweakAp) {
-                            vesselAutoPilot.setStoppingTime(stoppingTime);
-                            vesselAutoPilot.setDecelerationTime(decelerationTime);
-                            vesselAutoPilot.setTimeToPeak(timeToPeak);
-                            vesselAutoPilot.setAttenuationAngle(attenuationAngle);
+                            mirror.setProfile(followerProfile);
                         }
                         // stage
-                        if (vesselControl.getCurrentStage() < leadControl.getCurrentStage()) {
+                        if (vesselControl.getCurrentStage() < leaderState.getCurrentStage()) {
                             vesselControl.activateNextStage();
                         }
 
                         // set non-directional controls
-                        setNonDirectionalControls(vesselControl, leadControl);
+                        setNonDirectionalControls(mirror, leaderState);
 
                         // set flight telemetry targets
-                        vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                        vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                        vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                        vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
-                        vesselAutoPilot.engage();
+                        mirror.setTargetPitch(leaderState.getPitch());
+                        mirror.setTargetRoll(leaderState.getRoll());
+                        mirror.setTargetHeading(leaderState.getHeading());
+                        mirror.setTargetDirection(leaderState.getDirection());
+                        mirror.engage();
                     }
                 } catch(RPCException e){
                     e.printStackTrace();
@@ -106,7 +129,7 @@ public class RunSquadronBombingRun {
             if(leadControl.getActionGroup(2) && bombsReleased == false) {
                 int currentStage = leader.getControl().getCurrentStage();
                 logger.info("Current stage of leader is " + currentStage);
-                squad.getSquadronVessels().parallelStream().forEach(v -> {
+                squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
                     try {
                         v.getControl().toggleActionGroup(2);
                         int myCurrentStage = currentStage;
@@ -117,7 +140,7 @@ public class RunSquadronBombingRun {
                 });
                 bombsReleased = true;
             }
-            sleep(leadPollingIntervalMillis);
+            ticker.awaitNextTick();
         }
     }
 
@@ -170,13 +193,13 @@ public class RunSquadronBombingRun {
         sleep(1000);
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 public class RunSquadronChase {
 
@@ -38,7 +40,11 @@ public class RunSquadronChase {
 
     final static boolean tweakAp = true;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // slots the followers hold around the leader while chasing
+    final static FormationController.Formation formation = FormationController.Formation.VEE;
+    final static double formationSpacingMeters = 30;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -51,10 +57,20 @@ public class RunSquadronChase {
                 spaceCenter);
 
         int leadPollingIntervalMillis = 5;
+        // loop runs at 1000 / leadPollingIntervalMillis Hz while manoeuvring, down to minPollingHz when level
+        double minPollingHz = 20;
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
-        SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        // 0,1 is turboJet
+        EngineRegistry engineRegistry = new EngineRegistry(connection, leader, 0);
+        FormationController formationController = new FormationController(
+                connection, leader, formation, formationSpacingMeters, FormationController.Output.AUTOPILOT);
+        formationController.assignSlots(vessels);
+        squad.addMembershipListener((s, vessel, cause) -> {
+            engineRegistry.forget(vessel);
+            formationController.forget(vessel);
+        });
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -84,65 +100,42 @@ public class RunSquadronChase {
         spaceCenter.setActiveVessel(leader);
 
 
-        boolean lights = leadControl.getLights();
+        boolean lights = leaderSnapshot.get().getLights();
         logger.info("Starting control system, leader lights are {}.", lights);
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
+        AdaptiveRateController rateController =
+                new AdaptiveRateController(squadronName, minPollingHz, 1000.0 / leadPollingIntervalMillis);
         while(true) {
 
-            lights = leadControl.getLights();
-            // if leader's lights have changed from last iteration, iterate through planes and change SASMode
-            if(lights != leadControl.getLights()) {
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            rateController.adjust(ticker, leaderState);
+            // if leader's lights have changed from last iteration, switch flight modes for squadron
+            if(lights != leaderState.getLights()) {
                 logger.info("Detected change in leader lights, changing flight modes for squadron.");
-                lights = leadControl.getLights();
-                try {
-                    for (SpaceCenter.Vessel vessel : vessels) {
-                        spaceCenter.setActiveVessel(vessel);
-                        spaceCenter.setTargetVessel(leader);
-                        SpaceCenter.Control vesselControl = vessel.getControl();
-                        if (lights == true) {
-                            vesselControl.setSASMode(SpaceCenter.SASMode.TARGET);
-                        } else {
-                            vesselControl.setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
-                        }
-                    }
-                    // back to leader
-                    // BUG: when you switch, other vessels lose their targets!
-                    spaceCenter.setActiveVessel(leader);
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
+                lights = leaderState.getLights();
             }
 
-            // SASMode TARGET = chase the leader, only apply non-directional controls and rely on SAS target for flight
+            // lights on = chase the leader, hold a formation slot around the leader
+            // this replaces SAS TARGET mode, which lost the leader as its target whenever the active vessel changed
             if(lights == true) {
                 logger.info("lights = {}, chasing leader", lights);
+                Map<SpaceCenter.Vessel, FormationController.Correction> corrections = formationController.update(leaderState);
                 for (SpaceCenter.Vessel vessel : vessels) {
-                    SpaceCenter.Control vesselControl = null;
-                    SpaceCenter.AutoPilot vesselAutoPilot = null;
-                    if (!vessel.equals(leader)) {
+                    FormationController.Correction correction = corrections.get(vessel);
+                    if (!vessel.equals(leader) && correction != null) {
                         try {
-                            vesselControl = vessel.getControl();
-                            vesselAutoPilot = vessel.getAutoPilot();
-                            setNonDirectionalControls(leader, vessel, vesselControl, leadControl);
-
-                            /**
-                             * BUG: All vessels have set the leader as their SAS target, and SAS is set to Target mode.
-                             * There's a bug here, when you switch back to the lead vessel, all other vessels lose track
-                             * of the leader. While other vessels' nav balls maintain "Target m/s", the SAS mod
-                             * switches back to stability assist. So this SHOULD work, but it currently doesn't.
-                             */
-                            vesselControl.setSASMode(SpaceCenter.SASMode.TARGET);
-                            vesselAutoPilot.engage();
-
+                            FollowerControlMirror mirror = FollowerControlMirror.of(vessel);
+                            setNonDirectionalControls(engineRegistry, vessel, mirror, leaderState, correction.getThrottle());
+                            formationController.apply(mirror, correction, leaderState);
+                            mirror.engage();
+                        } catch (IllegalArgumentException e) {
+                            logger.error("Vessel {} missing, removing from squadron vessels.", vessel.toString());
+                            squad.evict(vessel, e);
                         } catch (RPCException e) {
                             e.printStackTrace();
                         }
                     }
                 }
-                try {
-                    Thread.sleep(leadPollingIntervalMillis);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
             }
 
             // SASMode STABILITY_ASSIST = squadron flight, mimic the leader, apply all flight controls
@@ -153,58 +146,42 @@ public class RunSquadronChase {
                     SpaceCenter.AutoPilot vesselAutoPilot = null;
                     if (!vessel.equals(leader)) {
                         try {
-                            vesselControl = vessel.getControl();
-                            vesselAutoPilot = vessel.getAutoPilot();
+                            FollowerControlMirror mirror = FollowerControlMirror.of(vessel);
+                            vesselControl = mirror.getControl();
+                            vesselAutoPilot = mirror.getAutoPilot();
 
                             // set non-directional controls
-                            setNonDirectionalControls(leader, vessel, vesselControl, leadControl);
+                            setNonDirectionalControls(engineRegistry, vessel, mirror, leaderState, leaderState.getThrottle());
                             // set flight telemetry targets
-                            vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                            vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                            vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                            vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
-                            vesselAutoPilot.engage();
+                            mirror.setTargetPitch(leaderState.getPitch());
+                            mirror.setTargetRoll(leaderState.getRoll());
+                            mirror.setTargetHeading(leaderState.getHeading());
+                            mirror.setTargetDirection(leaderState.getDirection());
+                            mirror.engage();
                         } catch (IllegalArgumentException e) {
-                        e.printStackTrace();
                         logger.error("Vessel {} missing, removing from squadron vessels.", vessel.toString());
-                        // vessels.remove(vessel); //throws ConcurrentModificationException
+                        squad.evict(vessel, e);
                         } catch (RPCException e) {
                         e.printStackTrace();
                         }
                     }
                 }
             }
-            // wait leadPollingIntervalMillis
-            try {
-                Thread.sleep(leadPollingIntervalMillis);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            ticker.awaitNextTick();
         }
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Vessel leader,
+    public static void setNonDirectionalControls(EngineRegistry engineRegistry,
                                                  SpaceCenter.Vessel vessel,
-                                                 SpaceCenter.Control vesselControl,
-                                                 SpaceCenter.Control leadControl) {
+                                                 FollowerControlMirror mirror,
+                                                 LeaderSnapshot.Frame leaderState,
+                                                 float throttle) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
-
-            List<SpaceCenter.Engine> engines = vessel.getParts().getEngines();
-            engines.stream().forEach(x -> {
-                try {
-                    if(x.getPart().getEngine().getHasModes() == true){
-                        // 0,1 is turboJet
-                        x.setMode(leader.getParts().getEngines().get(0).getMode());
-                    }
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-            });
-
+            mirror.setBrakes(leaderState.getBrakes());
+            mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(throttle);
+            engineRegistry.mirrorLeaderMode(vessel);
         } catch (RPCException e) {
             e.printStackTrace();
         }
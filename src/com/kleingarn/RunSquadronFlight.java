@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -9,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 public class RunSquadronFlight {
@@ -17,8 +19,10 @@ public class RunSquadronFlight {
 
     final static String leaderName = "squad_blue_00";
     final static String squadronName = "squad_blue";
+    // takes over if the leader is destroyed, then the closest vessel to where the leader was
+    final static List<String> successorPriority = Arrays.asList("squad_blue_01", "squad_blue_02");
 
-    public static void main(String[] args) throws IOException, RPCException {
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -32,9 +36,18 @@ public class RunSquadronFlight {
 
         int leadPollingIntervalMillis = 5;
         SpaceCenter.Vessel leader = squad.getSquadLeader();
-        List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
-        SpaceCenter.Control leadControl = leader.getControl();
-        SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        // 4 is turboJet
+        EngineRegistry[] engineRegistry = {new EngineRegistry(connection, leader, 4)};
+        LeaderHealthMonitor leaderHealth = new LeaderHealthMonitor(connection, spaceCenter, squad, leaderSnapshot, successorPriority);
+        leaderHealth.addFailoverListener((s, oldLeader, newLeader) -> {
+            engineRegistry[0].close();
+            try {
+                engineRegistry[0] = new EngineRegistry(connection, newLeader, 4);
+            } catch (StreamException e) {
+                e.printStackTrace();
+            }
+        });
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -64,69 +77,70 @@ public class RunSquadronFlight {
 
         boolean tweakAp = true;
 
+        // pushed to each follower once, FollowerControlMirror skips it while the vessel already has it
+        AutopilotProfile followerProfile = new AutopilotProfile("tuned")
+                .withStoppingTime(stoppingTime)
+                .withDecelerationTime(decelerationTime)
+                .withTimeToPeak(timeToPeak)
+                .withAttenuationAngle(attenuationAngle);
+
         // v2
         // periodically get all config from leader and apply to squadron
         logger.info("Updating autopilot for squad every {} ms", leadPollingIntervalMillis);
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
         while (true) {
+            leaderHealth.check();
+            LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+            SpaceCenter.Vessel currentLeader = squad.getSquadLeader();
 
-            for (SpaceCenter.Vessel vessel : vessels) {
-                SpaceCenter.Control vesselControl = null;
-                SpaceCenter.AutoPilot vesselAutoPilot = null;
+            for (SpaceCenter.Vessel vessel : squad.getSquadronVessels()) {
                 try {
-                    vesselControl = vessel.getControl();
-                    vesselAutoPilot = vessel.getAutoPilot();
-                } catch (IllegalArgumentException e) {
-                    e.printStackTrace();
-                }
-                if (!vessel.equals(leader)) {
-                    if (tweakAp) {
-                        vesselAutoPilot.setStoppingTime(stoppingTime);
-                        vesselAutoPilot.setDecelerationTime(decelerationTime);
-                        vesselAutoPilot.setTimeToPeak(timeToPeak);
-                        vesselAutoPilot.setAttenuationAngle(attenuationAngle);
+                    FollowerControlMirror mirror = FollowerControlMirror.of(vessel);
+                    SpaceCenter.Control vesselControl = mirror.getControl();
+                    if (!vessel.equals(currentLeader)) {
+                        if (tweakAp) {
+                            mirror.setProfile(followerProfile);
+                        }
+                        // stage
+                        if(vesselControl.getCurrentStage() < leaderState.getCurrentStage()){
+                            vesselControl.activateNextStage();
+                            // staging can drop engines, look them up again
+                            engineRegistry[0].forget(vessel);
+                        }
+
+                        // set non-directional controls
+                        setNonDirectionalControls(mirror, leaderState);
+                        engineRegistry[0].mirrorLeaderMode(vessel);
+
+                        // set flight telemetry targets
+                        mirror.setTargetPitch(leaderState.getPitch());
+                        mirror.setTargetRoll(leaderState.getRoll());
+                        mirror.setTargetHeading(leaderState.getHeading());
+                        mirror.setTargetDirection(leaderState.getDirection());
+                        mirror.engage();
                     }
-                    // stage
-                    if(vesselControl.getCurrentStage() < leadControl.getCurrentStage()){
-                        vesselControl.activateNextStage();
+                } catch (IllegalArgumentException e) {
+                    if (vessel.equals(currentLeader)) {
+                        // fail over at the top of the next tick
+                        leaderHealth.reportLeaderLost(e);
+                        continue;
                     }
-
-                    // set non-directional controls
-                    setNonDirectionalControls(vesselControl, leadControl);
-                    List<SpaceCenter.Engine> engines = vessel.getParts().getEngines();
-                    engines.stream().forEach(x -> {
-                        try {
-                            if(x.getPart().getEngine().getHasModes() == true){
-                                // 4 is turboJet
-                                x.setMode(leader.getParts().getEngines().get(4).getMode());
-                            }
-                        } catch (RPCException e) {
-                            e.printStackTrace();
-                        }
-                    });
-
-                    // set flight telemetry targets
-                    vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                    vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                    vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                    vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
-                    vesselAutoPilot.engage();
+                    // the squadron's copy on write list, safe to evict while iterating
+                    squad.evict(vessel, e);
+                    engineRegistry[0].forget(vessel);
                 }
             }
-            try {
-                Thread.sleep(leadPollingIntervalMillis);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            ticker.awaitNextTick();
         }
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
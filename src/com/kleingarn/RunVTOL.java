@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -10,7 +11,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.annotation.Documented;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static com.kleingarn.FuelUtils.dropEmptyTanks;
@@ -22,12 +26,19 @@ public class RunVTOL {
     final static Logger logger = LoggerFactory.getLogger(RunVTOL.class);
     final static String craftName = "vtol ssto claw 02";
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // pods ramp their throttle at this rate, wrapping to 0 above full, until they dock
+    final static float throttleRampPerSecond = 0.01F;
+    final static long throttleRampPeriodMillis = 50;
+    static DockingStateWatcher dockingStateWatcher;
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Flight");
         KRPC krpc = KRPC.newInstance(connection);
         SpaceCenter spaceCenter = SpaceCenter.newInstance(connection);
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
+        PartGraph.useConnection(connection);
+        dockingStateWatcher = new DockingStateWatcher(connection);
 
         // assume we are flying already
         SpaceCenter.Vessel vessel = spaceCenter.getActiveVessel();
@@ -76,59 +87,35 @@ public class RunVTOL {
                                                 String controlFromPart,
                                                 float pitch,
                                                 SpaceCenter.SASMode orientation) {
-        squadron.getSquadronVessels().
-                parallelStream().
-                filter(v -> !v.equals(squadron.getSquadLeader())).
-                forEach
-                    (v -> {
-                        boolean docked = false;
-                        try {
-                            logger.info("Setting {} SAS and SASMode", v.getName());
-                            DockingUtils.setControlFromProbe(v, controlFromPart);
-                            // float reducer = pitch / 10;
-                            float throttleIncrement = 0.005F;
-                            int attempts = 0;
-                            while(!docked) {
-                                logger.info("Docked is: {}", docked);
-                                v.getControl().setSAS(true);
-                                v.getControl().setPitch(pitch);
-                                // v.getControl().setSASMode(orientation); // too forceful
-                                // v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
-
-                                if (pitch > 0) {
-                                    if(throttleIncrement * attempts > 1.0F) {
-                                        attempts = 0;
-                                    } else {
-                                        v.getControl().setThrottle(throttleIncrement * attempts++);
-                                    }
-                                } else {
-                                    v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
-                                    if(throttleIncrement * attempts > 1.0F) {
-                                        attempts = 0;
-                                    } else {
-                                        v.getControl().setThrottle(throttleIncrement * attempts++);
-                                    }
-                                }
-                                docked = v.getParts().getDockingPorts().stream().anyMatch(
-                                        dp -> {
-                                            try {
-                                                logger.info("Docking state of part {} is {}", dp, dp.getState());
-                                                return dp.getState().equals(SpaceCenter.DockingPortState.DOCKED);
-                                            } catch (RPCException e) {
-                                                e.printStackTrace();
-                                            }
-                                            return false;
-                                        }
-                                );
-                                sleep(500);
-                            }
-                        } catch (IllegalArgumentException e) {
-                            e.printStackTrace();
-                            docked = true;
-                        } catch (RPCException e) {
-                            e.printStackTrace();
-                        }
-                    });
+        List<CompletableFuture<SpaceCenter.Vessel>> docked = new ArrayList<>();
+        for (SpaceCenter.Vessel v : squadron.getSquadronVessels()) {
+            if (v.equals(squadron.getSquadLeader())) {
+                continue;
+            }
+            try {
+                logger.info("Setting {} SAS and SASMode", v.getName());
+                DockingUtils.setControlFromProbe(v, controlFromPart);
+                v.getControl().setSAS(true);
+                v.getControl().setPitch(pitch);
+                // v.getControl().setSASMode(orientation); // too forceful
+                if (pitch <= 0) {
+                    v.getControl().setSASMode(SpaceCenter.SASMode.STABILITY_ASSIST);
+                }
+                // done the moment a port or claw connects, the throttle ramps until then
+                docked.add(dockingStateWatcher.watch(v));
+                dockingStateWatcher.rampThrottle(v, throttleRampPerSecond, throttleRampPeriodMillis);
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            } catch (RPCException | StreamException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            CompletableFuture.allOf(docked.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // a pod destroyed on the way back, the rest still docked
+            logger.error("Not every pod docked: {}", e.getCause().getMessage());
+        }
     }
 
     private static void sleep (int sleepTimeInmillis) {
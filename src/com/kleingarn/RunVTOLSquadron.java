@@ -2,6 +2,7 @@ package com.kleingarn;
 
 import krpc.client.Connection;
 import krpc.client.RPCException;
+import krpc.client.StreamException;
 import krpc.client.services.KRPC;
 import krpc.client.services.SpaceCenter;
 import org.javatuples.Triplet;
@@ -18,6 +19,14 @@ public class RunVTOLSquadron {
     static String leaderName = "lead";
     final static String squadronName = "air";
 
+    // follower RPCs run on a dedicated I/O pool, a follower slower than this is skipped until it catches up
+    final static int followerTickTimeoutMillis = 500;
+    // separate kRPC connections for follower RPCs, one socket serializes every call made on it
+    final static int connectionPoolSize = 4;
+    static SquadronExecutor squadronExecutor;
+    // followers get the leader's attitude extrapolated to when their commands land, not the tick's copy
+    final static LeaderPredictor leaderPredictor = new LeaderPredictor(5);
+
     // v1 impl, listen for changes from leader using callbacks, unused here
     // squad.getAndSetUpdatesFromLeader(spaceCenter, connection);
 
@@ -48,7 +57,17 @@ public class RunVTOLSquadron {
 
     final static boolean tweakAp = false;
 
-    public static void main(String[] args) throws IOException, RPCException {
+    // pushed to each follower once, FollowerControlMirror skips it while the vessel already has it
+    final static AutopilotProfile followerProfile = tweakAp
+            ? new AutopilotProfile("tuned")
+                    .withStoppingTime(stoppingTime)
+                    .withDecelerationTime(decelerationTime)
+                    .withTimeToPeak(timeToPeak)
+                    .withAttenuationAngle(attenuationAngle)
+                    .withRollThreshold(rollThreshold)
+            : new AutopilotProfile("default").withRollThreshold(rollThreshold);
+
+    public static void main(String[] args) throws IOException, RPCException, StreamException {
         // init
         Connection connection = Connection.newInstance("Squadron flight");
         KRPC krpc = KRPC.newInstance(connection);
@@ -56,10 +75,10 @@ public class RunVTOLSquadron {
         logger.info("Connected to kRPC version {}", krpc.getStatus().getVersion());
 
 
-        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter.getVessels(), "longAntenna");
+        List<SpaceCenter.Vessel> potentialLeadList = Squadron.getVesselsWithPart(spaceCenter, "longAntenna");
         for (SpaceCenter.Vessel vessel : potentialLeadList) {
             logger.info("Setting vessel {} name to ", vessel.getName(), leaderName);
-            vessel.setName(leaderName);
+            VesselIndex.of(spaceCenter).rename(vessel, leaderName);
             spaceCenter.setActiveVessel(vessel);
         }
 
@@ -67,6 +86,10 @@ public class RunVTOLSquadron {
                 squadronName,
                 leaderName,
                 spaceCenter);
+        squadronExecutor = SquadronExecutor.forSquadron(squad, followerTickTimeoutMillis);
+        KrpcConnectionPool connectionPool = KrpcConnectionPool.newInstance("Squadron flight", connectionPoolSize);
+        connectionPool.pinAll(squad.getSquadronVessels());
+        FollowerControlMirror.useConnectionPool(connectionPool);
 
         SpaceCenter.Vessel leader = squad.getSquadLeader();
         List<SpaceCenter.Vessel> vessels = squad.getSquadronVessels();
@@ -76,6 +99,8 @@ public class RunVTOLSquadron {
         }
         SpaceCenter.Control leadControl = leader.getControl();
         SpaceCenter.Flight leadFlightTelemetry = leader.flight(leader.getSurfaceReferenceFrame());
+        LeaderSnapshot leaderSnapshot = new LeaderSnapshot(connection, leader);
+        ActionGroupSync actionGroupSync = new ActionGroupSync(connection, leader);
 
         logger.info("##### Built squadron from available active vessels #####");
         logger.info("squadron name: {}", squad.getSquadronName());
@@ -89,84 +114,74 @@ public class RunVTOLSquadron {
         List<SpaceCenter.Decoupler> allDecouplers = spaceCenter.getActiveVessel().getParts().getDecouplers();
         logger.info("Current vessel has " + allDecouplers.size() + " decouplers");
 
+        MissionTicker ticker = new MissionTicker(squadronName, leadPollingIntervalMillis);
         while (true) {
 
             leadControl = leader.getControl();
-            if (leader.getControl().getActionGroup(7)) {
+            actionGroupSync.refresh();
+            if (actionGroupSync.get(7)) {
                 setAutopilotLevelOnSquadron(vessels, leadFlightTelemetry);
             } else {
-                setAutopilotTargets(squad, leader, leadFlightTelemetry, leadControl);
+                LeaderSnapshot.Frame leaderState = leaderSnapshot.refresh();
+                leaderPredictor.record(leaderState);
+                setAutopilotTargets(squad, leader, leaderState);
             }
 
-            for (int i=0; i<10; i++) {
-                try {
-                    setActionGroupsOnSquadron(i, leadControl.getActionGroup(i), vessels);
-                } catch (IllegalArgumentException e) {
-                    vessels.remove(i);
-                    logger.error("Caught IllegalArgumentException, removed vessel from squadron" + i);
-                    e.printStackTrace();
-                }
-            }
+            actionGroupSync.sync(vessels, squadronExecutor);
 
-            if (leader.getControl().getActionGroup(5)) {
+            if (actionGroupSync.get(5)) {
                 logger.info("Deploying even chutes");
                 deployChutes(spaceCenter, leader, true);
                 leadControl.setActionGroup(5, false);
             }
 
-            if (leader.getControl().getActionGroup(6)) {
+            if (actionGroupSync.get(6)) {
                 logger.info("Deploying odd chutes");
                 deployChutes(spaceCenter, leader, false);
                 leadControl.setActionGroup(6, false);
             }
 
-            sleep(leadPollingIntervalMillis);
+            ticker.awaitNextTick();
         }
     }
 
     public static void setAutopilotTargets(Squadron squad,
                                            SpaceCenter.Vessel leader,
-                                           SpaceCenter.Flight leadFlightTelemetry,
-                                           SpaceCenter.Control leadControl) {
+                                           LeaderSnapshot.Frame leaderState) {
         logger.info("Applying lead flight telemetry to autopilot for all squadron vessels.");
-        squad.getSquadronVessels().parallelStream().forEach(v -> {
+        squadronExecutor.runTick(squad.getSquadronVessels(), v -> {
             SpaceCenter.Control vesselControl = null;
             SpaceCenter.AutoPilot vesselAutoPilot = null;
             try {
-                vesselControl = v.getControl();
-                vesselAutoPilot = v.getAutoPilot();
+                FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                vesselControl = mirror.getControl();
+                vesselAutoPilot = mirror.getAutoPilot();
                 if (!v.equals(leader)) {
-                    if (tweakAp) {
-                        vesselAutoPilot.setStoppingTime(stoppingTime);
-                        vesselAutoPilot.setDecelerationTime(decelerationTime);
-                        vesselAutoPilot.setTimeToPeak(timeToPeak);
-                        vesselAutoPilot.setAttenuationAngle(attenuationAngle);
-                        vesselAutoPilot.setRollThreshold(rollThreshold);
-                    }
+                    mirror.setProfile(followerProfile);
                     // stage
-                    if (vesselControl.getCurrentStage() < leadControl.getCurrentStage()) {
+                    if (vesselControl.getCurrentStage() < leaderState.getCurrentStage()) {
                         vesselControl.activateNextStage();
                     }
 
                     // set non-directional controls
-                    setNonDirectionalControls(vesselControl, leadControl);
+                    setNonDirectionalControls(mirror, leaderState);
 
-                    // set flight telemetry targets
-                    vesselAutoPilot.setTargetPitch(leadFlightTelemetry.getPitch());
-                    // logger.info("lead pitch {}", leadFlightTelemetry.getPitch());
+                    // set flight telemetry targets, predicted one average RPC time ahead for this follower
+                    SquadronExecutor.VesselMetrics metrics = squadronExecutor.getMetrics(v);
+                    LeaderSnapshot.Frame predicted = leaderPredictor.predict(metrics == null ? 0 : metrics.getAverageMillis());
+                    mirror.setTargetPitch(predicted.getPitch());
+                    // logger.info("lead pitch {}", predicted.getPitch());
 
-                    vesselAutoPilot.setRollThreshold(rollThreshold);
-                    vesselAutoPilot.setTargetRoll(leadFlightTelemetry.getRoll());
-                    // logger.info("lead roll {}", leadFlightTelemetry.getRoll());
+                    mirror.setTargetRoll(predicted.getRoll());
+                    // logger.info("lead roll {}", predicted.getRoll());
 
-                    vesselAutoPilot.setTargetHeading(leadFlightTelemetry.getHeading());
-                    vesselAutoPilot.setTargetDirection(leadFlightTelemetry.getDirection());
+                    mirror.setTargetHeading(predicted.getHeading());
+                    mirror.setTargetDirection(predicted.getDirection());
                 }
             } catch(RPCException e){
                 e.printStackTrace();
             } catch(IllegalArgumentException e) {
-                e.printStackTrace();
-                squad.removeVesselFromSquadron(v);
+                squadronExecutor.markLost(v, squad, e);
             } catch (IllegalMonitorStateException e) {
                 e.printStackTrace();
             }
@@ -177,12 +192,12 @@ public class RunVTOLSquadron {
     public static void setAutopilotLevelOnSquadron(List<SpaceCenter.Vessel> vessels, SpaceCenter.Flight leadFlightTelemetry) {
         try {
             logger.info("Squadron on full auto mode, will maintain pitch, roll, heading, and target direction");
-            vessels.parallelStream().forEach(v -> {
+            squadronExecutor.runTick(vessels, v -> {
                 try {
-                    SpaceCenter.AutoPilot vesselAutoPilot = v.getAutoPilot();
-                    vesselAutoPilot.setTargetPitch(4);
-                    vesselAutoPilot.setTargetRoll(0);
-                    v.getControl().setThrottle(0.6F);
+                    FollowerControlMirror mirror = FollowerControlMirror.of(v);
+                    mirror.setTargetPitch(4);
+                    mirror.setTargetRoll(0);
+                    mirror.setThrottle(0.6F);
                 } catch (RPCException e) {
                     e.printStackTrace();
                 }
@@ -192,29 +207,18 @@ public class RunVTOLSquadron {
         }
     }
 
-    public static void setNonDirectionalControls(SpaceCenter.Control vesselControl,
-                                   SpaceCenter.Control leadControl) {
+    public static void setNonDirectionalControls(FollowerControlMirror mirror,
+                                   LeaderSnapshot.Frame leaderState) {
         try {
-            vesselControl.setBrakes(leadControl.getBrakes());
-            // vesselControl.setSAS(leadControl.getSAS());
-            vesselControl.setGear(leadControl.getGear());
-            vesselControl.setThrottle(leadControl.getThrottle());
+            mirror.setBrakes(leaderState.getBrakes());
+            // mirror.setSAS(leaderState.getSAS());
+            mirror.setGear(leaderState.getGear());
+            mirror.setThrottle(leaderState.getThrottle());
         } catch (RPCException e) {
             e.printStackTrace();
         }
     }
 
-    private static void setActionGroupsOnSquadron(int groupNumber, boolean groupState, List<SpaceCenter.Vessel> squadronVessels) {
-
-        for(SpaceCenter.Vessel vessel : squadronVessels) {
-            try {
-                vessel.getControl().setActionGroup(groupNumber, groupState);
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
     private static void deployChutes(SpaceCenter spaceCenter, SpaceCenter.Vessel vessel, boolean even) {
             try {
                 spaceCenter.setActiveVessel(vessel);
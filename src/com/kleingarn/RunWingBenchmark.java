@@ -0,0 +1,142 @@
+package com.kleingarn;
+
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares squadron tick latency of a flat follower list with the SquadronWing tree for 10, 50 and
+ * 200 followers, without KSP running. The stand-in server models what limits a real squadron tick:
+ * every kRPC connection is one socket that answers one call at a time, each call taking rpcMicros.
+ * The vessels are plain handles with made-up ids, only the stand-in server is ever called.
+ *
+ * Both layouts get the same budget: threadBudget follower threads (one flat executor, or split evenly
+ * over the wings' executors) and the same number of connections, each pinned the way it is in a real
+ * run: round robin for the flat squadron like pinAll, per wing for the tree like SquadronWing.build.
+ * Each size runs with the connection budget of today's squadrons (poolSize) and with one connection
+ * per wing. The tree's wing driver threads only wait on sub-wing ticks and are not counted.
+ */
+public class RunWingBenchmark {
+
+    final static Logger logger = LoggerFactory.getLogger(RunWingBenchmark.class);
+
+    final static int[] squadronSizes = {10, 50, 200};
+    // a follower tick is a handful of control and autopilot writes
+    final static int rpcsPerFollower = 4;
+    final static long rpcMicros = 500;
+    final static int poolSize = 4;
+    final static int threadBudget = 64;
+    final static int wingSize = 8;
+    final static int fanout = 4;
+    final static int warmupTicks = 5;
+    final static int measuredTicks = 30;
+    final static long tickTimeoutMillis = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        logger.info("Stand-in server: {} us per call, {} calls per follower tick, {} follower threads",
+                rpcMicros, rpcsPerFollower, threadBudget);
+        // what the top leader's snapshot would publish, wings fan out 10 degrees per sibling from it
+        LeaderSnapshot.Frame leaderFrame = new LeaderSnapshot.Frame(System.nanoTime(), 10, 0, 90,
+                LeaderPredictor.direction(10, 90), 1, false, false, true, null, false, 1);
+        List<String> results = new ArrayList<>();
+        for (int size : squadronSizes) {
+            List<SpaceCenter.Vessel> vessels = new ArrayList<>();
+            for (int i = 0; i <= size; i++) {
+                vessels.add(new SpaceCenter.Vessel(null, i + 1));
+            }
+            SpaceCenter.Vessel leader = vessels.get(0);
+            int wingCount = SquadronWing.getWingCount(size, wingSize);
+
+            for (int connections : poolSize == wingCount ? new int[] {poolSize} : new int[] {poolSize, wingCount}) {
+                Map<SpaceCenter.Vessel, Integer> spread = new HashMap<>();
+                Map<SpaceCenter.Vessel, Integer> byWing = new HashMap<>();
+                for (int i = 1; i < vessels.size(); i++) {
+                    spread.put(vessels.get(i), (i - 1) % connections);
+                    byWing.put(vessels.get(i), ((i - 1) / wingSize) % connections);
+                }
+
+                StandInServer flatServer = new StandInServer(connections);
+                Squadron flat = new Squadron("flat", vessels, leader);
+                SquadronExecutor flatExecutor = SquadronExecutor.forSquadron(flat, threadBudget, tickTimeoutMillis);
+                double[] flatTicks = measure(() -> flatExecutor.runTick(flat, v -> {
+                    if (!v.equals(leader)) {
+                        flatServer.tick(spread.get(v));
+                    }
+                }));
+                flatExecutor.shutdown();
+
+                StandInServer wingServer = new StandInServer(connections);
+                int threadsPerWing = Math.max(1, threadBudget / wingCount);
+                SquadronWing root = SquadronWing.build(new Squadron("wings", vessels, leader), wingSize, fanout,
+                        tickTimeoutMillis, null, threadsPerWing, SquadronWing.headingSpread(10));
+                double[] wingTicks = measure(() -> root.runTick(leaderFrame,
+                        (wing, v, wingFrame) -> wingServer.tick(byWing.get(v))));
+                int depth = root.getDepth();
+                root.shutdown();
+
+                results.add(String.format("%4d followers, %2d conn | flat %6.1f ms (p95 %6.1f) | %2d wings, depth %d, %2d threads each %6.1f ms (p95 %6.1f)",
+                        size, connections, flatTicks[0], flatTicks[1],
+                        wingCount, depth, threadsPerWing, wingTicks[0], wingTicks[1]));
+            }
+        }
+        for (String result : results) {
+            logger.info(result);
+        }
+    }
+
+    // mean and p95 tick time in ms
+    private static double[] measure(Runnable tick) {
+        for (int i = 0; i < warmupTicks; i++) {
+            tick.run();
+        }
+        double[] millis = new double[measuredTicks];
+        for (int i = 0; i < measuredTicks; i++) {
+            long start = System.nanoTime();
+            tick.run();
+            millis[i] = (System.nanoTime() - start) / 1_000_000.0;
+        }
+        Arrays.sort(millis);
+        double sum = 0;
+        for (double m : millis) {
+            sum += m;
+        }
+        return new double[] {sum / measuredTicks, millis[(int) Math.ceil(measuredTicks * 0.95) - 1]};
+    }
+
+    /**
+     * One lock per connection, held for rpcMicros per call, like a kRPC socket that answers calls in order.
+     */
+    private static class StandInServer {
+        private final Object[] connections;
+
+        StandInServer(int connectionCount) {
+            connections = new Object[connectionCount];
+            for (int i = 0; i < connectionCount; i++) {
+                connections[i] = new Object();
+            }
+        }
+
+        void tick(int connection) {
+            for (int i = 0; i < rpcsPerFollower; i++) {
+                call(connection);
+            }
+        }
+
+        void call(int connection) {
+            synchronized (connections[connection]) {
+                long deadline = System.nanoTime() + rpcMicros * 1_000;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+            }
+        }
+    }
+}
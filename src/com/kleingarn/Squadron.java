@@ -9,8 +9,11 @@ import org.javatuples.Triplet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -18,9 +21,23 @@ import static java.util.stream.Collectors.toList;
 public class Squadron {
 
     private final static Logger logger = LoggerFactory.getLogger(Squadron.class);
-    private static String squadronName;
-    private static List<SpaceCenter.Vessel> squadronVessels;
-    private static SpaceCenter.Vessel squadLeader;
+    private String squadronName;
+    // copy on write, follower tasks remove vessels while the tick iterates a snapshot
+    private volatile List<SpaceCenter.Vessel> squadronVessels;
+    private SpaceCenter.Vessel squadLeader;
+
+    private final List<MembershipListener> listeners = new CopyOnWriteArrayList<>();
+
+    // membership events run off the tick thread
+    private final static ExecutorService eventDispatcher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "squadron-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface MembershipListener {
+        void vesselEvicted(Squadron squad, SpaceCenter.Vessel vessel, Exception cause);
+    }
 
     private final static float streamRate = 16.0f; // 0.16
                                                                                // pitch, roll, yaw
@@ -31,42 +48,33 @@ public class Squadron {
 
     public Squadron(String squadronName, List<SpaceCenter.Vessel> squadronVessels, SpaceCenter.Vessel squadLeader) {
         this.squadronName = squadronName;
-        this.squadronVessels = squadronVessels;
+        this.squadronVessels = new CopyOnWriteArrayList<>(squadronVessels);
         this.squadLeader = squadLeader;
     }
 
     public static Squadron buildSquadron(String vesselPrefix, String leaderVesselName, SpaceCenter spaceCenter) {
 
         try {
-            // get active vessels
-            List<SpaceCenter.Vessel> allVessels = spaceCenter.getVessels();
-            logger.info("##### Listing all active vessels #####");
-            printActiveVesselsFromList(allVessels);
+            // names come from the index, only vessels new since the last build cost an RPC
+            VesselIndex index = VesselIndex.of(spaceCenter).refresh();
+            logger.info("##### {} active vessels #####", index.size());
 
             // find squadron
-            List<SpaceCenter.Vessel> squadronVessels = allVessels.stream().filter(v -> {
-                try {
-                    return (v.getName().contains(vesselPrefix) && !v.getName().contains("Debris"));
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;}).collect(toList());
+            List<SpaceCenter.Vessel> squadronVessels = index.vesselsNameContaining(vesselPrefix).stream()
+                    .filter(v -> !index.getName(v).contains("Debris"))
+                    .collect(toList());
             logger.info("##### Listing vessels in squadron #####");
-            printActiveVesselsFromList(squadronVessels);
+            printActiveVesselsFromList(squadronVessels, index);
 
             // find leader
-            List<SpaceCenter.Vessel> squadLeaderList = squadronVessels.stream().filter(v -> {
-                try {
-                    return v.getName().contains(leaderVesselName);
-                } catch (RPCException e) {
-                    e.printStackTrace();
-                }
-                return false;}).collect(toList());
+            List<SpaceCenter.Vessel> squadLeaderList = squadronVessels.stream()
+                    .filter(v -> index.getName(v).contains(leaderVesselName))
+                    .collect(toList());
             logger.info("##### Listing squad leader #####");
-            printActiveVesselsFromList(squadLeaderList);
+            printActiveVesselsFromList(squadLeaderList, index);
             // SpaceCenter.Vessel leadVessel = squadLeaderList.get(0);
             SpaceCenter.Vessel leadVessel = spaceCenter.getActiveVessel();
-            logger.info("Squad leader set = {} ", leadVessel.getName());
+            logger.info("Squad leader set = {} ", index.getName(leadVessel));
 
             return new Squadron(vesselPrefix, squadronVessels, leadVessel);
         } catch(RPCException e) {
@@ -88,19 +96,27 @@ public class Squadron {
         logger.info("Total vessels: {}", i);
     }
 
-    public static String getSquadronName() {
+    // same as above from cached names, no RPCs
+    public static void printActiveVesselsFromList(List<SpaceCenter.Vessel> vessels, VesselIndex index) {
+        for(SpaceCenter.Vessel vessel : vessels) {
+            logger.info("Vessel found: {}", index.getName(vessel));
+        }
+        logger.info("Total vessels: {}", vessels.size());
+    }
+
+    public String getSquadronName() {
         return squadronName;
     }
     public void setSquadronName(String squadronName) {
         this.squadronName = squadronName;
     }
 
-    public static List<SpaceCenter.Vessel> getSquadronVessels() {
+    public List<SpaceCenter.Vessel> getSquadronVessels() {
         return squadronVessels;
     }
 
     public void setSquadronVessels(List<SpaceCenter.Vessel> squadronVessels) {
-        Squadron.squadronVessels = squadronVessels;
+        this.squadronVessels = new CopyOnWriteArrayList<>(squadronVessels);
     }
 
     public SpaceCenter.Vessel getSquadLeader() {
@@ -118,21 +134,35 @@ public class Squadron {
     }
 
     public void setSquadLeader(SpaceCenter.Vessel vessel) {
-        Squadron.squadLeader = vessel;
-    }
-
-// saving as an example of using a callback
-//
-//        Stream<Boolean> brakes = connection.addStream(control, "getBrakes");
-//        brakes.addCallback(
-//                (Boolean x) -> {
-//                    logger.info("Brakes set to {}" + x);
-//                    // could set brake control here but let's be cool
-//                    // each callback will need to update the config and apply it
-//                    config.setBrakes(x);
-//                    setUpdatesFromLeader(spaceCenter, connection, config);
-//                });
-//        brakes.start();
+        this.squadLeader = vessel;
+    }
+
+    /**
+     * Removes a vessel that no longer exists, e.g. after an RPC on it threw IllegalArgumentException.
+     * Only the first call for a vessel evicts it and notifies listeners, later calls return false.
+     */
+    public boolean evict(SpaceCenter.Vessel vessel, Exception cause) {
+        if (!squadronVessels.remove(vessel)) {
+            return false;
+        }
+        // vessel is gone, toString only, no RPC
+        logger.error("Vessel {} destroyed, evicted from squadron {}", vessel, squadronName);
+        FollowerControlMirror.forget(vessel);
+        for (MembershipListener listener : listeners) {
+            eventDispatcher.execute(() -> listener.vesselEvicted(this, vessel, cause));
+        }
+        return true;
+    }
+
+    public void addMembershipListener(MembershipListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeMembershipListener(MembershipListener listener) {
+        listeners.remove(listener);
+    }
+
+    // to push leader control changes to the squadron as they happen, see LeaderEventBus
 
     public void setUpdatesFromLeader(SpaceCenter spaceCenter, Connection connection) {
 
@@ -165,31 +195,15 @@ public class Squadron {
         }
     }
 
-    public static List<SpaceCenter.Vessel> getVesselsWithPart(List<SpaceCenter.Vessel> vessels, String partName){
-
-        List<SpaceCenter.Vessel> matchingVessels = new ArrayList<>();
-        for(SpaceCenter.Vessel vessel : vessels) {
-            try {
-                logger.info("Printing all parts, looking for part {} on vessel {}", partName, vessel.getName());
-                vessel.getParts().getAll().stream().forEach(p -> {
-                    try {
-                        logger.info("Vessel {} part {}", vessel.getName(), p.getName());
-                    } catch (RPCException e) {
-                        e.printStackTrace();
-                    }
-                });
-                List<SpaceCenter.Part> matchingParts = vessel.getParts().withName(partName);
-                if (matchingParts.size() > 0) {
-                    logger.info("Found " + matchingParts.size() + " matching parts!");
-                    matchingVessels.add(vessel);
-                } else {
-                    logger.warn("Part {} not found on vessel {}", partName, vessel.getName());
-                }
-
-            } catch (RPCException e) {
-                e.printStackTrace();
-            }
-        }
+    // answered from the vessel index, part names are loaded once per vessel
+    public static List<SpaceCenter.Vessel> getVesselsWithPart(SpaceCenter spaceCenter, String partName) throws RPCException {
+        List<SpaceCenter.Vessel> matchingVessels = VesselIndex.of(spaceCenter).refresh().vesselsWithPart(partName);
+        logger.info("Found {} vessels with part {}", matchingVessels.size(), partName);
         return matchingVessels;
     }
+
+    // several part lookups from one pass over the index, keyed by part name
+    public static Map<String, List<SpaceCenter.Vessel>> getVesselsWithParts(SpaceCenter spaceCenter, String... partNames) throws RPCException {
+        return VesselIndex.of(spaceCenter).refresh().vesselsWithParts(partNames);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one task per follower vessel on a dedicated I/O thread pool, then waits for all of them
+ * before the tick ends. kRPC calls block on the socket, so running them on the common ForkJoinPool
+ * via parallelStream caps concurrency at cores - 1 and starves every other parallel stream in the JVM.
+ *
+ * A vessel that does not finish within the tick timeout is logged and left running; it is skipped
+ * on following ticks until its previous task completes, so one slow vessel never piles up work.
+ * Busy state is kept per kind of task, i.e. per task class, which is one per runTick call site, so
+ * e.g. an action group push and the follower tick sharing the executor never skip each other.
+ *
+ * A task that throws IllegalArgumentException means the vessel is gone. It is evicted from its
+ * squadron once and never scheduled again, so a lost vessel stops costing a failed RPC every tick.
+ * Its busy state and metrics are dropped with it, and it is forgotten altogether once neither its
+ * squadron nor the vessels of a tick list it.
+ */
+public class SquadronExecutor {
+
+    final static Logger logger = LoggerFactory.getLogger(SquadronExecutor.class);
+
+    private final static int maxThreads = 64;
+
+    private final String name;
+    private final ExecutorService pool;
+    private final long tickTimeoutMillis;
+    // squadron to evict lost vessels from when runTick is given a plain vessel list, may be null
+    private final Squadron squadron;
+
+    // task class to the vessels' running tasks of that kind
+    private final Map<Class<?>, Map<SpaceCenter.Vessel, Future<?>>> inFlight = new ConcurrentHashMap<>();
+    private final Map<SpaceCenter.Vessel, VesselMetrics> metrics = new ConcurrentHashMap<>();
+    private final Set<SpaceCenter.Vessel> lostVessels = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong ticks = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    @FunctionalInterface
+    public interface VesselTask {
+        void run(SpaceCenter.Vessel vessel) throws RPCException;
+    }
+
+    public SquadronExecutor(String name, int threads, long tickTimeoutMillis) {
+        this(name, threads, tickTimeoutMillis, null);
+    }
+
+    private SquadronExecutor(String name, int threads, long tickTimeoutMillis, Squadron squadron) {
+        this.name = name;
+        this.tickTimeoutMillis = tickTimeoutMillis;
+        this.squadron = squadron;
+        this.pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, maxThreads)), daemonThreads(name));
+        logger.info("Squadron executor {} started with {} threads, tick timeout {} ms",
+                name, Math.max(1, Math.min(threads, maxThreads)), tickTimeoutMillis);
+    }
+
+    /**
+     * One thread per vessel up to the pool limit, so every follower's RPCs can be in flight at once.
+     */
+    public static SquadronExecutor forSquadron(Squadron squad, long tickTimeoutMillis) {
+        return forSquadron(squad, squad.getSquadronVessels().size(), tickTimeoutMillis);
+    }
+
+    // a fixed number of threads, for callers splitting a thread budget over several executors
+    public static SquadronExecutor forSquadron(Squadron squad, int threads, long tickTimeoutMillis) {
+        return new SquadronExecutor(squad.getSquadronName(), threads, tickTimeoutMillis, squad);
+    }
+
+    /**
+     * Runs the task for every current member of the squadron, evicting vessels that turn out to be gone.
+     */
+    public int runTick(Squadron squad, VesselTask task) {
+        return runTick(squad.getSquadronVessels(), task, squad);
+    }
+
+    /**
+     * Runs the task once for every vessel and blocks until all of them finish or the tick timeout expires.
+     * Returns the number of vessels that completed within the tick.
+     */
+    public int runTick(Collection<SpaceCenter.Vessel> vessels, VesselTask task) {
+        return runTick(vessels, task, squadron);
+    }
+
+    private int runTick(Collection<SpaceCenter.Vessel> vessels, VesselTask task, Squadron squad) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tickTimeoutMillis);
+        ticks.incrementAndGet();
+
+        // snapshot, the task may remove vessels from the squadron while we submit
+        List<SpaceCenter.Vessel> tickVessels = new ArrayList<>(vessels);
+        if (squad != null && !lostVessels.isEmpty()) {
+            // evicted vessels neither the squadron nor this tick lists won't come back
+            List<SpaceCenter.Vessel> members = squad.getSquadronVessels();
+            lostVessels.removeIf(lost -> !members.contains(lost) && !tickVessels.contains(lost));
+        }
+        Map<SpaceCenter.Vessel, Future<?>> running =
+                inFlight.computeIfAbsent(task.getClass(), k -> new ConcurrentHashMap<>());
+        List<SpaceCenter.Vessel> submittedVessels = new ArrayList<>(tickVessels.size());
+        List<Future<?>> submitted = new ArrayList<>(tickVessels.size());
+
+        for (SpaceCenter.Vessel vessel : tickVessels) {
+            if (lostVessels.contains(vessel)) {
+                continue;
+            }
+            Future<?> previous = running.get(vessel);
+            if (previous != null && !previous.isDone()) {
+                skipped.incrementAndGet();
+                logger.warn("[{}] Vessel {} still busy with the previous tick, skipping", name, vessel);
+                continue;
+            }
+            Future<?> future = pool.submit(() -> runTimed(vessel, task, squad));
+            running.put(vessel, future);
+            submittedVessels.add(vessel);
+            submitted.add(future);
+        }
+
+        // per-tick barrier
+        int completed = 0;
+        for (int i = 0; i < submitted.size(); i++) {
+            try {
+                submitted.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                completed++;
+            } catch (TimeoutException e) {
+                timeouts.incrementAndGet();
+                metricsFor(submittedVessels.get(i)).recordTimeout();
+                logger.warn("[{}] Vessel {} did not finish within {} ms", name, submittedVessels.get(i), tickTimeoutMillis);
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return completed;
+    }
+
+    private void runTimed(SpaceCenter.Vessel vessel, VesselTask task, Squadron squad) {
+        long start = System.nanoTime();
+        try {
+            task.run(vessel);
+        } catch (RPCException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            markLost(vessel, squad, e);
+        } finally {
+            if (!lostVessels.contains(vessel)) {
+                metricsFor(vessel).record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Stops scheduling a vessel and evicts it from its squadron, once. Tasks that catch
+     * IllegalArgumentException themselves can call this to get the same treatment.
+     */
+    public void markLost(SpaceCenter.Vessel vessel, Squadron squad, Exception cause) {
+        if (lostVessels.add(vessel)) {
+            logger.error("[{}] Vessel {} missing, no longer scheduled", name, vessel);
+            for (Map<SpaceCenter.Vessel, Future<?>> running : inFlight.values()) {
+                running.remove(vessel);
+            }
+            metrics.remove(vessel);
+            if (squad != null) {
+                squad.evict(vessel, cause);
+            }
+        }
+    }
+
+    public Set<SpaceCenter.Vessel> getLostVessels() {
+        return Collections.unmodifiableSet(lostVessels);
+    }
+
+    private VesselMetrics metricsFor(SpaceCenter.Vessel vessel) {
+        VesselMetrics vesselMetrics = metrics.get(vessel);
+        if (vesselMetrics == null) {
+            metrics.putIfAbsent(vessel, new VesselMetrics());
+            vesselMetrics = metrics.get(vessel);
+        }
+        return vesselMetrics;
+    }
+
+    public VesselMetrics getMetrics(SpaceCenter.Vessel vessel) {
+        return metrics.get(vessel);
+    }
+
+    public long getTicks() {
+        return ticks.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public void logMetrics() {
+        logger.info("[{}] {} ticks, {} vessel timeouts, {} vessel ticks skipped", name, ticks.get(), timeouts.get(), skipped.get());
+        for (Map.Entry<SpaceCenter.Vessel, VesselMetrics> entry : metrics.entrySet()) {
+            VesselMetrics m = entry.getValue();
+            logger.info("[{}] Vessel {} tick avg {} ms, max {} ms, last {} ms over {} ticks, {} timeouts",
+                    name,
+                    entry.getKey(),
+                    m.getAverageMillis(),
+                    m.getMaxMillis(),
+                    m.getLastMillis(),
+                    m.getCount(),
+                    m.getTimeouts());
+        }
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, "squadron-" + name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Tick duration for a single follower.
+     */
+    public static class VesselMetrics {
+        private long count;
+        private long totalNanos;
+        private long lastNanos;
+        private long maxNanos;
+        private long timeouts;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            lastNanos = nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized void recordTimeout() {
+            timeouts++;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getAverageMillis() {
+            return count == 0 ? 0 : (totalNanos / (double) count) / 1_000_000.0;
+        }
+
+        public synchronized double getLastMillis() {
+            return lastNanos / 1_000_000.0;
+        }
+
+        public synchronized double getMaxMillis() {
+            return maxNanos / 1_000_000.0;
+        }
+
+        public synchronized long getTimeouts() {
+            return timeouts;
+        }
+    }
+}
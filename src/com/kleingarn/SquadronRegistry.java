@@ -0,0 +1,153 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs several squadrons from one process, e.g. bombers plus an escort. Every registered squadron
+ * gets its own loop thread and MissionTicker, while follower RPCs from all of them share one
+ * SquadronExecutor and, when given, one KrpcConnectionPool.
+ */
+public class SquadronRegistry implements Closeable {
+
+    final static Logger logger = LoggerFactory.getLogger(SquadronRegistry.class);
+
+    private final SquadronExecutor executor;
+    private final KrpcConnectionPool connectionPool;
+
+    private final Map<String, Squadron> squadrons = new ConcurrentHashMap<>();
+    private final Map<String, SquadronLoopThread> loops = new ConcurrentHashMap<>();
+
+    /**
+     * One tick of a squadron's follow loop, run at the rate given to start().
+     */
+    @FunctionalInterface
+    public interface SquadronLoop {
+        void tick(Squadron squad, SquadronExecutor executor) throws RPCException;
+    }
+
+    public SquadronRegistry(SquadronExecutor executor, KrpcConnectionPool connectionPool) {
+        this.executor = executor;
+        this.connectionPool = connectionPool;
+        if (connectionPool != null) {
+            FollowerControlMirror.useConnectionPool(connectionPool);
+        }
+    }
+
+    public void register(Squadron squad) throws RPCException {
+        if (squadrons.putIfAbsent(squad.getSquadronName(), squad) != null) {
+            throw new IllegalStateException("Squadron " + squad.getSquadronName() + " is already registered");
+        }
+        if (connectionPool != null) {
+            connectionPool.pinAll(squad.getSquadronVessels());
+        }
+        logger.info("Registered squadron {} with {} vessels", squad.getSquadronName(), squad.getSquadronVessels().size());
+    }
+
+    public Squadron get(String squadronName) {
+        return squadrons.get(squadronName);
+    }
+
+    public List<Squadron> getSquadrons() {
+        return new ArrayList<>(squadrons.values());
+    }
+
+    // the squadron a vessel flies with, or null
+    public Squadron squadronOf(SpaceCenter.Vessel vessel) {
+        for (Squadron squad : squadrons.values()) {
+            if (squad.getSquadronVessels().contains(vessel)) {
+                return squad;
+            }
+        }
+        return null;
+    }
+
+    public SquadronExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Starts the loop for a registered squadron on its own thread, ticking every periodMillis.
+     */
+    public void start(String squadronName, long periodMillis, SquadronLoop loop) {
+        Squadron squad = squadrons.get(squadronName);
+        if (squad == null) {
+            throw new IllegalArgumentException("No squadron " + squadronName);
+        }
+        SquadronLoopThread thread = new SquadronLoopThread(squad, new MissionTicker(squadronName, periodMillis), loop);
+        if (loops.putIfAbsent(squadronName, thread) != null) {
+            throw new IllegalStateException("Squadron " + squadronName + " is already running");
+        }
+        logger.info("Starting squadron {} every {} ms", squadronName, periodMillis);
+        thread.start();
+    }
+
+    public void stop(String squadronName) {
+        SquadronLoopThread thread = loops.remove(squadronName);
+        if (thread != null) {
+            thread.halt();
+        }
+    }
+
+    // blocks until every squadron loop has stopped
+    public void awaitAll() throws InterruptedException {
+        for (SquadronLoopThread thread : loops.values()) {
+            thread.join();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (String squadronName : new ArrayList<>(loops.keySet())) {
+            stop(squadronName);
+        }
+        executor.shutdown();
+        if (connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    private class SquadronLoopThread extends Thread {
+        private final Squadron squad;
+        private final MissionTicker ticker;
+        private final SquadronLoop loop;
+        private volatile boolean running = true;
+
+        SquadronLoopThread(Squadron squad, MissionTicker ticker, SquadronLoop loop) {
+            super("squadron-loop-" + squad.getSquadronName());
+            this.squad = squad;
+            this.ticker = ticker;
+            this.loop = loop;
+        }
+
+        // stops after the current tick, no interrupt so an RPC in flight is not cut off
+        void halt() {
+            running = false;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    loop.tick(squad, executor);
+                } catch (RPCException e) {
+                    e.printStackTrace();
+                } catch (RuntimeException e) {
+                    // keep the other squadrons flying
+                    logger.error("Squadron {} tick failed", squad.getSquadronName());
+                    e.printStackTrace();
+                }
+                ticker.awaitNextTick();
+            }
+            ticker.logStats();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a large squadron into a tree of wings. Each wing is a Squadron of at most wingSize
+ * followers led by its first vessel, with its own SquadronExecutor and, when a connection pool is
+ * given, its own kRPC connection. Wings are arranged fanout-ary: a tick starts the sub-wings' ticks
+ * before running its own members, so all wings work in parallel.
+ *
+ * The tree is not faster than a flat SquadronExecutor given the same threads and connections, a tick
+ * still takes as long as the busiest connection's calls (see RunWingBenchmark). Tick time comes down
+ * by adding connections, not levels.
+ *
+ * A wing's leader is its first member, but its state is never read from KSP: each tick the wing
+ * computes its frame from its parent wing's frame with a {@link WingFrameSource}, starting from the
+ * top leader's snapshot, and its members fly on that frame. Deriving costs no RPCs, so the top leader
+ * is still the only vessel the squadron reads.
+ */
+public class SquadronWing {
+
+    final static Logger logger = LoggerFactory.getLogger(SquadronWing.class);
+
+    @FunctionalInterface
+    public interface WingTask {
+        void run(SquadronWing wing, SpaceCenter.Vessel vessel, LeaderSnapshot.Frame wingFrame) throws RPCException;
+    }
+
+    /**
+     * Computes a wing leader's frame from its parent's, the root wing's parent frame is the top leader's.
+     */
+    @FunctionalInterface
+    public interface WingFrameSource {
+        LeaderSnapshot.Frame derive(SquadronWing wing, LeaderSnapshot.Frame parentFrame);
+    }
+
+    private final Squadron wing;
+    private final int wingIndex;
+    // distance from the root wing
+    private final int level;
+    private final int fanout;
+    private final SquadronExecutor executor;
+    private final WingFrameSource frameSource;
+    private final List<SquadronWing> subWings = new ArrayList<>();
+    // runs sub-wing ticks, shared by the whole tree
+    private final ExecutorService wingDriver;
+
+    private SquadronWing(Squadron wing, int wingIndex, int level, int fanout, int threads, long tickTimeoutMillis,
+                         WingFrameSource frameSource, ExecutorService wingDriver) {
+        this.wing = wing;
+        this.wingIndex = wingIndex;
+        this.level = level;
+        this.fanout = fanout;
+        this.executor = SquadronExecutor.forSquadron(wing, threads, tickTimeoutMillis);
+        this.frameSource = frameSource;
+        this.wingDriver = wingDriver;
+    }
+
+    /**
+     * Builds the wing tree for all followers of the squadron, leader excluded. With a connection pool
+     * wing i is pinned to connection i modulo the pool size, so size the pool to getWingCount(...).
+     * Every wing flies on the top leader's frame and gets one thread per member.
+     */
+    public static SquadronWing build(Squadron squad, int wingSize, int fanout, long tickTimeoutMillis,
+                                     KrpcConnectionPool pool) throws RPCException {
+        return build(squad, wingSize, fanout, tickTimeoutMillis, pool, wingSize, sameFrame());
+    }
+
+    /**
+     * As above, with threadsPerWing follower threads in each wing's executor, so the tree can be held
+     * to the same thread budget as a flat executor, and wing frames derived by frameSource.
+     */
+    public static SquadronWing build(Squadron squad, int wingSize, int fanout, long tickTimeoutMillis,
+                                     KrpcConnectionPool pool, int threadsPerWing,
+                                     WingFrameSource frameSource) throws RPCException {
+        if (wingSize < 1 || fanout < 1 || threadsPerWing < 1) {
+            throw new IllegalArgumentException("Need wingSize, fanout and threadsPerWing of at least 1, got "
+                    + wingSize + ", " + fanout + " and " + threadsPerWing);
+        }
+        List<SpaceCenter.Vessel> followers = new ArrayList<>(squad.getSquadronVessels());
+        followers.remove(squad.getSquadLeader());
+
+        List<List<SpaceCenter.Vessel>> members = partition(followers, wingSize);
+        if (members.isEmpty()) {
+            members.add(Collections.emptyList());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService wingDriver = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "wing-" + squad.getSquadronName() + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // heap layout, wing i's sub-wings are i * fanout + 1 .. i * fanout + fanout
+        List<SquadronWing> wings = new ArrayList<>();
+        for (int i = 0; i < members.size(); i++) {
+            List<SpaceCenter.Vessel> wingVessels = members.get(i);
+            SpaceCenter.Vessel wingLeader = wingVessels.isEmpty() ? squad.getSquadLeader() : wingVessels.get(0);
+            Squadron wingSquadron = new Squadron(squad.getSquadronName() + "-wing-" + i, wingVessels, wingLeader);
+            // a vessel lost in a wing is lost to the whole squadron
+            wingSquadron.addMembershipListener((s, vessel, cause) -> squad.evict(vessel, cause));
+            int level = i == 0 ? 0 : wings.get((i - 1) / fanout).level + 1;
+            SquadronWing wing = new SquadronWing(wingSquadron, i, level, fanout, threadsPerWing, tickTimeoutMillis,
+                    frameSource, wingDriver);
+            if (i > 0) {
+                wings.get((i - 1) / fanout).subWings.add(wing);
+            }
+            if (pool != null && !wingVessels.isEmpty()) {
+                // drops mirrors holding a handle on the connection pinAll gave them
+                for (SpaceCenter.Vessel vessel : wingVessels) {
+                    FollowerControlMirror.forget(vessel);
+                }
+                pool.pinTo(wingVessels, i % pool.size());
+            }
+            wings.add(wing);
+        }
+        SquadronWing root = wings.get(0);
+        logger.info("Split {} followers of {} into {} wings of up to {}, fanout {}, depth {}",
+                followers.size(), squad.getSquadronName(), wings.size(), wingSize, fanout, root.getDepth());
+        return root;
+    }
+
+    // every wing flies on the top leader's frame unchanged
+    public static WingFrameSource sameFrame() {
+        return (wing, parentFrame) -> parentFrame;
+    }
+
+    /**
+     * Fans sub-wings out around their parent's heading, degrees apart per sibling, so each level of
+     * the tree spreads wider than the one above it.
+     */
+    public static WingFrameSource headingSpread(double degrees) {
+        return (wing, parentFrame) -> {
+            if (wing.getLevel() == 0 || parentFrame == null) {
+                return parentFrame;
+            }
+            // siblings share a parent, their index within it is (i - 1) % fanout, centred on the parent
+            int sibling = (wing.getWingIndex() - 1) % wing.fanout;
+            double offset = (sibling - (wing.fanout - 1) / 2.0) * degrees;
+            return new LeaderSnapshot.Frame(
+                    parentFrame.getTimestampNanos(),
+                    parentFrame.getPitch(),
+                    parentFrame.getRoll(),
+                    (float) AngleUtils.wrap360(parentFrame.getHeading() + offset),
+                    LeaderPredictor.direction(parentFrame.getPitch(), AngleUtils.wrap360(parentFrame.getHeading() + offset)),
+                    parentFrame.getThrottle(),
+                    parentFrame.getGear(),
+                    parentFrame.getBrakes(),
+                    parentFrame.getSAS(),
+                    parentFrame.getSASMode(),
+                    parentFrame.getLights(),
+                    parentFrame.getCurrentStage());
+        };
+    }
+
+    public static int getWingCount(int followers, int wingSize) {
+        return Math.max(1, (followers + wingSize - 1) / wingSize);
+    }
+
+    /**
+     * Splits vessels into consecutive groups of at most size.
+     */
+    public static <T> List<List<T>> partition(List<T> items, int size) {
+        List<List<T>> groups = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += size) {
+            groups.add(new ArrayList<>(items.subList(start, Math.min(items.size(), start + size))));
+        }
+        return groups;
+    }
+
+    /**
+     * Runs the task for every vessel in this wing and all wings below it, call it on the root with the
+     * top leader's frame of this tick. Returns the number of vessels that completed within their wing's tick.
+     */
+    public int runTick(LeaderSnapshot.Frame parentFrame, WingTask task) {
+        LeaderSnapshot.Frame wingFrame = frameSource.derive(this, parentFrame);
+        List<Future<Integer>> subTicks = new ArrayList<>(subWings.size());
+        for (SquadronWing subWing : subWings) {
+            subTicks.add(wingDriver.submit(() -> subWing.runTick(wingFrame, task)));
+        }
+        int completed = executor.runTick(wing, v -> task.run(this, v, wingFrame));
+        for (Future<Integer> subTick : subTicks) {
+            try {
+                completed += subTick.get();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return completed;
+    }
+
+    public Squadron getWing() {
+        return wing;
+    }
+
+    public SpaceCenter.Vessel getWingLeader() {
+        return wing.getSquadLeader();
+    }
+
+    public int getWingIndex() {
+        return wingIndex;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    // height of the tree below this wing
+    public int getDepth() {
+        int below = 0;
+        for (SquadronWing subWing : subWings) {
+            below = Math.max(below, subWing.getDepth() + 1);
+        }
+        return below;
+    }
+
+    public List<SquadronWing> getSubWings() {
+        return Collections.unmodifiableList(subWings);
+    }
+
+    public SquadronExecutor getExecutor() {
+        return executor;
+    }
+
+    // vessels in this wing and all wings below it
+    public int size() {
+        int size = wing.getSquadronVessels().size();
+        for (SquadronWing subWing : subWings) {
+            size += subWing.size();
+        }
+        return size;
+    }
+
+    public void shutdown() {
+        for (SquadronWing subWing : subWings) {
+            subWing.shutdown();
+        }
+        executor.shutdown();
+        if (wingIndex == 0) {
+            wingDriver.shutdownNow();
+        }
+    }
+}
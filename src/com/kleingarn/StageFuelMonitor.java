@@ -0,0 +1,184 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Answers "is the next stage's tank dry" from streamed values. The parts that decouple come from the
+ * PartGraph, every resource in them gets an amount stream grouped by the part's decouple stage, and
+ * the vessel's current stage is streamed too, so isNextStageDry() costs no RPCs. Streams of stages already
+ * decoupled are removed as the current stage counts down. Each amount stream also records when it
+ * first reads empty, so callers know when a tank ran dry without waiting for their next poll.
+ *
+ * Requires that staging is properly set as if you were controlling manually.
+ */
+public class StageFuelMonitor {
+
+    final static Logger logger = LoggerFactory.getLogger(StageFuelMonitor.class);
+
+    private final SpaceCenter.Vessel vessel;
+    private final Stream<Integer> currentStage;
+    // decouple stage to the amount streams of every resource in the parts it drops
+    private final Map<Integer, List<Tank>> tanksByStage = new TreeMap<>();
+    // told on the stream thread when a tank first reads empty, no RPCs in there
+    private volatile Runnable dryListener;
+
+    public StageFuelMonitor(Connection connection, SpaceCenter.Vessel vessel) throws RPCException, StreamException {
+        this.vessel = vessel;
+        this.currentStage = connection.addStream(vessel.getControl(), "getCurrentStage");
+        int streams = 0;
+        PartGraph graph = PartGraph.of(vessel);
+        for (SpaceCenter.Part part : graph.getDecoupleableParts()) {
+            int decoupleStage = graph.getDecoupleStage(part);
+            String partName = graph.getName(part);
+            for (SpaceCenter.Resource resource : part.getResources().getAll()) {
+                Stream<Float> amount = connection.addStream(resource, "getAmount");
+                Tank tank = new Tank(partName, resource.getName(), amount);
+                amount.addCallback(value -> {
+                    if (value != null && value <= 0 && tank.dryAtNanos == 0) {
+                        tank.dryAtNanos = System.nanoTime();
+                        Runnable listener = dryListener;
+                        if (listener != null) {
+                            listener.run();
+                        }
+                    }
+                });
+                amount.start();
+                tanksByStage.computeIfAbsent(decoupleStage, s -> new ArrayList<>()).add(tank);
+                streams++;
+            }
+        }
+        logger.info("Streaming {} resources in {} decouple stages of {}, current stage {}",
+                streams, tanksByStage.size(), vessel.getName(), currentStage.get());
+    }
+
+    public int getCurrentStage() throws StreamException {
+        return currentStage.get();
+    }
+
+    /**
+     * True when any resource in a part dropped by the next stage is empty.
+     */
+    public synchronized boolean isNextStageDry() throws StreamException {
+        int stage = currentStage.get();
+        dropDecoupledStages(stage);
+        // currentStage - 1 = nextStage
+        List<Tank> tanks = tanksByStage.get(stage - 1);
+        if (tanks == null) {
+            return false;
+        }
+        for (Tank tank : tanks) {
+            if (tank.amount.get() <= 0) {
+                logger.info("Part {} of stage {} is out of {}", tank.partName, stage - 1, tank.resourceName);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * When the first tank the next stage drops was streamed as empty, 0 while none has been.
+     */
+    public synchronized long getNextStageDryNanos() throws StreamException {
+        int stage = currentStage.get();
+        dropDecoupledStages(stage);
+        List<Tank> tanks = tanksByStage.get(stage - 1);
+        if (tanks == null) {
+            return 0;
+        }
+        long dryAt = 0;
+        for (Tank tank : tanks) {
+            if (tank.dryAtNanos != 0 && (dryAt == 0 || tank.dryAtNanos < dryAt)) {
+                dryAt = tank.dryAtNanos;
+            }
+        }
+        return dryAt;
+    }
+
+    public void setDryListener(Runnable listener) {
+        this.dryListener = listener;
+    }
+
+    /**
+     * Amounts of every resource in the parts the next stage drops, in a fixed order while the
+     * current stage doesn't change. Empty when the next stage drops no resources.
+     */
+    public synchronized double[] getNextStageAmounts() throws StreamException {
+        int stage = currentStage.get();
+        dropDecoupledStages(stage);
+        List<Tank> tanks = tanksByStage.get(stage - 1);
+        if (tanks == null) {
+            return new double[0];
+        }
+        double[] amounts = new double[tanks.size()];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = tanks.get(i).amount.get();
+        }
+        return amounts;
+    }
+
+    // parts with a decouple stage at or above the current stage are gone, their streams with them
+    private void dropDecoupledStages(int stage) {
+        Iterator<Map.Entry<Integer, List<Tank>>> it = tanksByStage.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, List<Tank>> entry = it.next();
+            if (entry.getKey() < stage) {
+                continue;
+            }
+            remove(entry.getValue());
+            it.remove();
+            logger.info("Stage {} decoupled, stopped streaming its resources", entry.getKey());
+        }
+    }
+
+    private static void remove(List<Tank> tanks) {
+        for (Tank tank : tanks) {
+            try {
+                tank.amount.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public SpaceCenter.Vessel getVessel() {
+        return vessel;
+    }
+
+    public synchronized void close() {
+        for (List<Tank> tanks : tanksByStage.values()) {
+            remove(tanks);
+        }
+        tanksByStage.clear();
+        try {
+            currentStage.remove();
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Tank {
+        final String partName;
+        final String resourceName;
+        final Stream<Float> amount;
+        // set once by the amount stream's callback
+        volatile long dryAtNanos;
+
+        Tank(String partName, String resourceName, Stream<Float> amount) {
+            this.partName = partName;
+            this.resourceName = resourceName;
+            this.amount = amount;
+        }
+    }
+}
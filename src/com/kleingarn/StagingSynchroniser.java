@@ -0,0 +1,176 @@
+package com.kleingarn;
+
+import krpc.client.Connection;
+import krpc.client.RPCException;
+import krpc.client.Stream;
+import krpc.client.StreamException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps followers on the leader's stage without polling or switching the active vessel every tick.
+ * Each member's current stage is streamed, so deciding who lags costs no RPCs. activateNextStage only
+ * works on the active vessel, so lagging followers are visited in a single sweep per tick, with one
+ * switch back to the leader at the end.
+ *
+ * KSP counts stages down, a follower lags while its current stage is above the leader's.
+ */
+public class StagingSynchroniser {
+
+    final static Logger logger = LoggerFactory.getLogger(StagingSynchroniser.class);
+
+    // a staged follower's stream can trail the staging by a few frames, don't stage it again before this
+    private final static long settleMillis = 1000;
+
+    private final Connection connection;
+    private final SpaceCenter spaceCenter;
+    // replaced by repoint() when the squadron fails over to a new leader
+    private volatile SpaceCenter.Vessel leader;
+
+    private final Map<SpaceCenter.Vessel, Stream<Integer>> currentStage = new ConcurrentHashMap<>();
+    private final Map<SpaceCenter.Vessel, Long> stagedAt = new ConcurrentHashMap<>();
+
+    private long sweeps;
+    private long visits;
+    private long visitNanos;
+    private long maxVisitNanos;
+
+    public StagingSynchroniser(Connection connection, SpaceCenter spaceCenter, SpaceCenter.Vessel leader) {
+        this.connection = connection;
+        this.spaceCenter = spaceCenter;
+        this.leader = leader;
+    }
+
+    /**
+     * Switches back to newLeader after each sweep from now on, the new leader is no longer staged.
+     */
+    public synchronized void repoint(SpaceCenter.Vessel newLeader) {
+        leader = newLeader;
+        forget(newLeader);
+    }
+
+    /**
+     * Stages every follower of the squadron that is behind leaderStage. Returns the number of
+     * followers staged.
+     */
+    public int sync(Squadron squad, int leaderStage) {
+        return sync(squad.getSquadronVessels(), leaderStage);
+    }
+
+    // called from the control loop and from leader stage events
+    public synchronized int sync(List<SpaceCenter.Vessel> vessels, int leaderStage) {
+        List<SpaceCenter.Vessel> lagging = new ArrayList<>();
+        long now = System.nanoTime();
+        for (SpaceCenter.Vessel vessel : vessels) {
+            if (vessel.equals(leader)) {
+                continue;
+            }
+            Long staged = stagedAt.get(vessel);
+            if (staged != null && (now - staged) / 1_000_000 < settleMillis) {
+                continue;
+            }
+            try {
+                if (getCurrentStage(vessel) > leaderStage) {
+                    lagging.add(vessel);
+                }
+            } catch (RPCException | StreamException e) {
+                e.printStackTrace();
+            } catch (IllegalArgumentException e) {
+                // vessel is gone, the squadron evicts it on its next RPC
+            }
+        }
+        if (lagging.isEmpty()) {
+            return 0;
+        }
+        return sweep(lagging, leaderStage);
+    }
+
+    // one visit per vessel, then a single switch back to the leader
+    private int sweep(List<SpaceCenter.Vessel> toVisit, int leaderStage) {
+        long sweepStart = System.nanoTime();
+        int staged = 0;
+        for (SpaceCenter.Vessel vessel : toVisit) {
+            long visitStart = System.nanoTime();
+            try {
+                spaceCenter.setActiveVessel(vessel);
+                // becoming active can reset the vessel's controls, the mirror must write them again
+                FollowerControlMirror.of(vessel).invalidate();
+                stageTo(vessel, vessel.getControl(), leaderStage);
+                staged++;
+            } catch (RPCException | StreamException | UnsupportedOperationException | IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+            recordVisit(System.nanoTime() - visitStart);
+        }
+        try {
+            spaceCenter.setActiveVessel(leader);
+        } catch (RPCException e) {
+            e.printStackTrace();
+        }
+        sweeps++;
+        logger.info("Staging sweep visited {} vessels in {} ms, {} ms per visit on average",
+                toVisit.size(), (System.nanoTime() - sweepStart) / 1_000_000, String.format("%.1f", getAverageVisitMillis()));
+        return staged;
+    }
+
+    // activates as many stages as the vessel is behind
+    private void stageTo(SpaceCenter.Vessel vessel, SpaceCenter.Control control, int leaderStage) throws RPCException, StreamException {
+        int stage = getCurrentStage(vessel);
+        while (stage > leaderStage) {
+            control.activateNextStage();
+            logger.info("Activating stage {} on vessel {}", stage - 1, vessel);
+            stage--;
+        }
+        stagedAt.put(vessel, System.nanoTime());
+    }
+
+    private int getCurrentStage(SpaceCenter.Vessel vessel) throws RPCException, StreamException {
+        Stream<Integer> stage = currentStage.get(vessel);
+        if (stage == null) {
+            stage = connection.addStream(vessel.getControl(), "getCurrentStage");
+            currentStage.put(vessel, stage);
+        }
+        return stage.get();
+    }
+
+    private synchronized void recordVisit(long nanos) {
+        visits++;
+        visitNanos += nanos;
+        maxVisitNanos = Math.max(maxVisitNanos, nanos);
+    }
+
+    public synchronized long getSweeps() {
+        return sweeps;
+    }
+
+    public synchronized long getVisits() {
+        return visits;
+    }
+
+    // measured cost of switching to a vessel and staging it
+    public synchronized double getAverageVisitMillis() {
+        return visits == 0 ? 0 : visitNanos / 1_000_000.0 / visits;
+    }
+
+    public synchronized double getMaxVisitMillis() {
+        return maxVisitNanos / 1_000_000.0;
+    }
+
+    public void forget(SpaceCenter.Vessel vessel) {
+        Stream<Integer> stage = currentStage.remove(vessel);
+        if (stage != null) {
+            try {
+                stage.remove();
+            } catch (RPCException e) {
+                e.printStackTrace();
+            }
+        }
+        stagedAt.remove(vessel);
+    }
+}
@@ -0,0 +1,231 @@
+package com.kleingarn;
+
+import krpc.client.RPCException;
+import krpc.client.services.SpaceCenter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of the vessels in the save: vessel to name, vessel to the set of its part names,
+ * and the inverted part name to vessels index.
+ * refresh() diffs the server's vessel list against the index, so only vessels that appeared since the
+ * last refresh cost a getName RPC. Part names are loaded for every unloaded vessel at once, in parallel
+ * per vessel, the first time a part is looked up, and kept until the set of vessels changes.
+ *
+ * Names are cached, so rename vessels through rename() to keep the index in step.
+ */
+public class VesselIndex {
+
+    final static Logger logger = LoggerFactory.getLogger(VesselIndex.class);
+
+    private final static Map<SpaceCenter, VesselIndex> indexes = new ConcurrentHashMap<>();
+
+    private final SpaceCenter spaceCenter;
+
+    // insertion ordered so lookups keep the server's vessel order
+    private final Map<SpaceCenter.Vessel, String> names = new LinkedHashMap<>();
+    private final Map<SpaceCenter.Vessel, Set<String>> partNames = new ConcurrentHashMap<>();
+    private final Map<String, Set<SpaceCenter.Vessel>> vesselsByPart = new ConcurrentHashMap<>();
+
+    private final static int partLoaderThreads = 16;
+    private final static long partLoadTimeoutMillis = 60_000;
+    private SquadronExecutor partLoader;
+    // when set, part loading is spread over the pool's connections instead of queuing on one socket
+    private volatile KrpcConnectionPool connectionPool;
+
+    public VesselIndex(SpaceCenter spaceCenter) {
+        this.spaceCenter = spaceCenter;
+    }
+
+    public void useConnectionPool(KrpcConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * The shared index for a SpaceCenter, created empty on first use.
+     */
+    public static VesselIndex of(SpaceCenter spaceCenter) {
+        VesselIndex index = indexes.get(spaceCenter);
+        if (index == null) {
+            indexes.putIfAbsent(spaceCenter, new VesselIndex(spaceCenter));
+            index = indexes.get(spaceCenter);
+        }
+        return index;
+    }
+
+    /**
+     * Brings the index up to date with one getVessels call plus one getName per new vessel.
+     */
+    public synchronized VesselIndex refresh() throws RPCException {
+        long start = System.nanoTime();
+        List<SpaceCenter.Vessel> current = spaceCenter.getVessels();
+        Set<SpaceCenter.Vessel> currentSet = new HashSet<>(current);
+
+        int removed = 0;
+        for (SpaceCenter.Vessel vessel : new ArrayList<>(names.keySet())) {
+            if (!currentSet.contains(vessel)) {
+                names.remove(vessel);
+                removed++;
+            }
+        }
+
+        int added = 0;
+        for (SpaceCenter.Vessel vessel : current) {
+            if (!names.containsKey(vessel)) {
+                try {
+                    names.put(vessel, vessel.getName());
+                    added++;
+                } catch (IllegalArgumentException e) {
+                    // destroyed between getVessels and getName
+                }
+            }
+        }
+        if (added > 0 || removed > 0) {
+            // docking, undocking and decoupling always add or remove a vessel and move parts between
+            // the survivors, so part names are only trusted while the vessel set is unchanged
+            partNames.clear();
+            vesselsByPart.clear();
+        }
+        logger.info("Vessel index refreshed, {} vessels, {} added, {} removed in {} ms",
+                names.size(), added, removed, (System.nanoTime() - start) / 1_000_000);
+        return this;
+    }
+
+    public synchronized List<SpaceCenter.Vessel> getVessels() {
+        return new ArrayList<>(names.keySet());
+    }
+
+    // cached name, or null if the vessel is not indexed
+    public synchronized String getName(SpaceCenter.Vessel vessel) {
+        return names.get(vessel);
+    }
+
+    public synchronized void rename(SpaceCenter.Vessel vessel, String name) throws RPCException {
+        vessel.setName(name);
+        names.put(vessel, name);
+    }
+
+    public synchronized List<SpaceCenter.Vessel> vesselsNamed(String name) {
+        List<SpaceCenter.Vessel> matching = new ArrayList<>();
+        for (Map.Entry<SpaceCenter.Vessel, String> entry : names.entrySet()) {
+            if (entry.getValue().equals(name)) {
+                matching.add(entry.getKey());
+            }
+        }
+        return matching;
+    }
+
+    public synchronized List<SpaceCenter.Vessel> vesselsNameContaining(String text) {
+        List<SpaceCenter.Vessel> matching = new ArrayList<>();
+        for (Map.Entry<SpaceCenter.Vessel, String> entry : names.entrySet()) {
+            if (entry.getValue().contains(text)) {
+                matching.add(entry.getKey());
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Vessels with at least one part of the given name, in server order.
+     */
+    public List<SpaceCenter.Vessel> vesselsWithPart(String partName) throws RPCException {
+        return vesselsWithParts(partName).get(partName);
+    }
+
+    /**
+     * Answers several part queries in one pass: part names are loaded once for every vessel that
+     * is missing them, then each query is a lookup in the inverted index.
+     */
+    public synchronized Map<String, List<SpaceCenter.Vessel>> vesselsWithParts(String... queriedPartNames) throws RPCException {
+        loadPartNames();
+        Map<String, List<SpaceCenter.Vessel>> matching = new LinkedHashMap<>();
+        for (String partName : queriedPartNames) {
+            Set<SpaceCenter.Vessel> withPart = vesselsByPart.getOrDefault(partName, Collections.emptySet());
+            List<SpaceCenter.Vessel> vessels = new ArrayList<>();
+            for (SpaceCenter.Vessel vessel : names.keySet()) {
+                if (withPart.contains(vessel)) {
+                    vessels.add(vessel);
+                }
+            }
+            matching.put(partName, vessels);
+        }
+        return matching;
+    }
+
+    public Set<String> getPartNames(SpaceCenter.Vessel vessel) throws RPCException {
+        Set<String> vesselPartNames = partNames.get(vessel);
+        if (vesselPartNames == null) {
+            vesselPartNames = indexParts(vessel, vessel);
+        }
+        return vesselPartNames;
+    }
+
+    // call after a vessel gains or loses parts outside of a refresh
+    public void invalidateParts(SpaceCenter.Vessel vessel) {
+        Set<String> vesselPartNames = partNames.remove(vessel);
+        if (vesselPartNames != null) {
+            for (String partName : vesselPartNames) {
+                Set<SpaceCenter.Vessel> withPart = vesselsByPart.get(partName);
+                if (withPart != null) {
+                    withPart.remove(vessel);
+                }
+            }
+        }
+    }
+
+    private void loadPartNames() throws RPCException {
+        List<SpaceCenter.Vessel> missing = new ArrayList<>();
+        for (SpaceCenter.Vessel vessel : names.keySet()) {
+            if (!partNames.containsKey(vessel)) {
+                missing.add(vessel);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        KrpcConnectionPool pool = connectionPool;
+        Map<SpaceCenter.Vessel, SpaceCenter.Vessel> handles = pool == null ? null : pool.spread(missing);
+        if (partLoader == null) {
+            partLoader = new SquadronExecutor("vessel-index", partLoaderThreads, partLoadTimeoutMillis);
+        }
+        partLoader.runTick(missing, vessel -> {
+            SpaceCenter.Vessel handle = handles == null ? vessel : handles.get(vessel);
+            if (handle != null) {
+                indexParts(vessel, handle);
+            }
+        });
+        logger.info("Indexed parts of {} vessels in {} ms", missing.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // handle is the same vessel, possibly bound to another connection
+    private Set<String> indexParts(SpaceCenter.Vessel vessel, SpaceCenter.Vessel handle) throws RPCException {
+        Set<String> vesselPartNames = new HashSet<>();
+        try {
+            for (SpaceCenter.Part part : handle.getParts().getAll()) {
+                vesselPartNames.add(part.getName());
+            }
+        } catch (IllegalArgumentException e) {
+            // vessel is gone, index it as having no parts until the next refresh drops it
+        }
+        vesselPartNames = Collections.unmodifiableSet(vesselPartNames);
+        partNames.put(vessel, vesselPartNames);
+        for (String partName : vesselPartNames) {
+            vesselsByPart.computeIfAbsent(partName, k -> ConcurrentHashMap.newKeySet()).add(vessel);
+        }
+        return vesselPartNames;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,91 @@
+package com.kleingarn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveRateControllerTest {
+
+    private static final double minHz = 1;
+    private static final double maxHz = 10;
+    private static final long tickNanos = 100_000_000L;
+
+    private long now;
+
+    private LeaderSnapshot.Frame next(float pitch, float heading, float throttle) {
+        now += tickNanos;
+        return new LeaderSnapshot.Frame(now, pitch, 0, heading, null, throttle,
+                false, false, true, null, false, 0);
+    }
+
+    // a minute of straight and level flight, checking every decision stays within the limits
+    private AdaptiveRateController settled() {
+        AdaptiveRateController controller = new AdaptiveRateController("test", minHz, maxHz);
+        for (int i = 0; i < 600; i++) {
+            double hz = controller.update(next(5, 90, 0.5f), 0);
+            assertTrue(hz >= minHz && hz <= maxHz);
+        }
+        return controller;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroMinimum() {
+        new AdaptiveRateController("test", 0, maxHz);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaximumBelowMinimum() {
+        new AdaptiveRateController("test", 5, 2);
+    }
+
+    @Test
+    public void startsAtTheMaximum() {
+        assertEquals(maxHz, new AdaptiveRateController("test", minHz, maxHz).getCurrentHz(), 0);
+    }
+
+    @Test
+    public void quietLeaderSettlesExactlyOnTheMinimum() {
+        assertEquals(minHz, settled().getCurrentHz(), 0);
+    }
+
+    @Test
+    public void hardTurnGoesBackToTheMaximumAndNoFurther() {
+        AdaptiveRateController controller = settled();
+        // 90 degrees in one tick is far past full scale
+        assertEquals(maxHz, controller.update(next(5, 180, 0.5f), 0), 0);
+        assertEquals(maxHz, controller.update(next(5, 0, 0.5f), 0), 0);
+    }
+
+    @Test
+    public void throttleChangeAndActionGroupsCountAsActivity() {
+        AdaptiveRateController controller = settled();
+        assertEquals(maxHz, controller.update(next(5, 90, 1), 0), 0);
+
+        controller = settled();
+        assertEquals(maxHz, controller.update(next(5, 90, 0.5f), 1 << 3), 0);
+    }
+
+    @Test
+    public void headingThroughNorthIsASmallChange() {
+        AdaptiveRateController controller = new AdaptiveRateController("test", minHz, maxHz);
+        for (int i = 0; i < 600; i++) {
+            controller.update(next(5, 359.9f, 0.5f), 0);
+        }
+        // 0.2 degrees, not 359.8
+        double hz = controller.update(next(5, 0.1f, 0.5f), 0);
+        assertTrue("rate " + hz, hz < maxHz / 2);
+    }
+
+    @Test
+    public void adjustRetunesTheTicker() {
+        AdaptiveRateController controller = new AdaptiveRateController("test", minHz, maxHz);
+        MissionTicker ticker = new MissionTicker("test", 1000);
+        controller.adjust(ticker, next(5, 90, 0.5f));
+        assertEquals(maxHz, ticker.getTargetHz(), 1e-6);
+        for (int i = 0; i < 600; i++) {
+            controller.adjust(ticker, next(5, 90, 0.5f));
+        }
+        assertEquals(minHz, ticker.getTargetHz(), 1e-6);
+    }
+}
@@ -0,0 +1,104 @@
+package com.kleingarn;
+
+import krpc.client.services.SpaceCenter;
+import org.javatuples.Triplet;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class AutopilotProfileTest {
+
+    private static final Triplet<Double, Double, Double> slow = new Triplet<>(5.0, 5.0, 5.0);
+    private static final Triplet<Double, Double, Double> fast = new Triplet<>(1.0, 1.0, 1.0);
+
+    // records the setters called instead of making RPCs
+    private static class RecordingAutoPilot extends SpaceCenter.AutoPilot {
+        final List<String> writes = new ArrayList<>();
+
+        RecordingAutoPilot() {
+            super(null, 1);
+        }
+
+        @Override
+        public void setStoppingTime(Triplet<Double, Double, Double> value) {
+            writes.add("stoppingTime");
+        }
+
+        @Override
+        public void setDecelerationTime(Triplet<Double, Double, Double> value) {
+            writes.add("decelerationTime");
+        }
+
+        @Override
+        public void setTimeToPeak(Triplet<Double, Double, Double> value) {
+            writes.add("timeToPeak");
+        }
+
+        @Override
+        public void setAttenuationAngle(Triplet<Double, Double, Double> value) {
+            writes.add("attenuationAngle");
+        }
+
+        @Override
+        public void setRollThreshold(double value) {
+            writes.add("rollThreshold");
+        }
+    }
+
+    @Test
+    public void appliesEverySetParameterWithoutAPreviousProfile() throws Exception {
+        AutopilotProfile profile = new AutopilotProfile("tuned")
+                .withStoppingTime(slow)
+                .withTimeToPeak(fast)
+                .withRollThreshold(5);
+        RecordingAutoPilot autoPilot = new RecordingAutoPilot();
+        assertEquals(3, profile.applyTo(autoPilot, null));
+        assertEquals(Arrays.asList("stoppingTime", "timeToPeak", "rollThreshold"), autoPilot.writes);
+    }
+
+    @Test
+    public void appliesOnlyWhatDiffersFromThePreviousProfile() throws Exception {
+        AutopilotProfile previous = new AutopilotProfile("tuned")
+                .withStoppingTime(slow)
+                .withDecelerationTime(slow)
+                .withRollThreshold(5);
+        AutopilotProfile next = previous
+                .withDecelerationTime(fast)
+                .withAttenuationAngle(fast);
+        RecordingAutoPilot autoPilot = new RecordingAutoPilot();
+        assertEquals(2, next.applyTo(autoPilot, previous));
+        assertEquals(Arrays.asList("decelerationTime", "attenuationAngle"), autoPilot.writes);
+    }
+
+    @Test
+    public void sameProfileAppliesNothing() throws Exception {
+        AutopilotProfile profile = new AutopilotProfile("default").withRollThreshold(5);
+        RecordingAutoPilot autoPilot = new RecordingAutoPilot();
+        assertEquals(0, profile.applyTo(autoPilot, new AutopilotProfile("default").withRollThreshold(5)));
+        assertEquals(Collections.emptyList(), autoPilot.writes);
+    }
+
+    @Test
+    public void withLeavesTheOriginalUnchanged() {
+        AutopilotProfile original = new AutopilotProfile("default");
+        AutopilotProfile tuned = original.withRollThreshold(5);
+        assertNull(original.getRollThreshold());
+        assertEquals(5.0, tuned.getRollThreshold(), 0);
+        assertNotEquals(original, tuned);
+    }
+
+    @Test
+    public void equalParametersMakeEqualProfiles() {
+        AutopilotProfile a = new AutopilotProfile("tuned").withStoppingTime(slow).withRollThreshold(5);
+        AutopilotProfile b = new AutopilotProfile("tuned").withRollThreshold(5).withStoppingTime(new Triplet<>(5.0, 5.0, 5.0));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+    }
+}
@@ -0,0 +1,86 @@
+package com.kleingarn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class LeaderPredictorTest {
+
+    private static final double delta = 1e-3;
+    private static final long secondNanos = 1_000_000_000L;
+
+    // far enough in the past that every prediction runs to the 500 ms horizon limit
+    private final long start = System.nanoTime() - 60 * secondNanos;
+
+    private LeaderSnapshot.Frame frame(double seconds, float pitch, float roll, float heading) {
+        return new LeaderSnapshot.Frame(start + (long) (seconds * secondNanos), pitch, roll, heading,
+                null, 1, false, false, true, null, false, 0);
+    }
+
+    @Test
+    public void predictsNothingBeforeTheFirstFrame() {
+        assertNull(new LeaderPredictor(4).predict(0));
+    }
+
+    @Test
+    public void returnsTheOnlyFrameUnchanged() {
+        LeaderPredictor predictor = new LeaderPredictor(4);
+        LeaderSnapshot.Frame only = frame(0, 10, 0, 90);
+        predictor.record(only);
+        assertSame(only, predictor.predict(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsRoomForTwoSamples() {
+        new LeaderPredictor(1);
+    }
+
+    @Test
+    public void extrapolatesLinearlyUpToTheHorizon() {
+        LeaderPredictor predictor = new LeaderPredictor(4);
+        predictor.record(frame(0, 0, 0, 90));
+        predictor.record(frame(1, 10, 0, 90));
+        LeaderSnapshot.Frame predicted = predictor.predict(0);
+        // 10 deg/s for the 0.5 s horizon
+        assertEquals(15, predicted.getPitch(), delta);
+        assertEquals(90, predicted.getHeading(), delta);
+    }
+
+    @Test
+    public void ratesSpanOnlyTheSamplesStillInTheRingBuffer() {
+        LeaderPredictor predictor = new LeaderPredictor(3);
+        predictor.record(frame(0, 0, 0, 90));
+        predictor.record(frame(1, 0, 0, 90));
+        predictor.record(frame(2, 10, 0, 90));
+        // overwrites the sample at 0 s, the rate now runs from 1 s to 3 s: 20 deg over 2 s
+        predictor.record(frame(3, 20, 0, 90));
+        assertEquals(25, predictor.predict(0).getPitch(), delta);
+    }
+
+    @Test
+    public void clampsPitchToVertical() {
+        LeaderPredictor predictor = new LeaderPredictor(4);
+        predictor.record(frame(0, 0, 0, 90));
+        predictor.record(frame(1, 80, 0, 90));
+        assertEquals(90, predictor.predict(0).getPitch(), delta);
+    }
+
+    @Test
+    public void headingWrapsThroughNorth() {
+        LeaderPredictor predictor = new LeaderPredictor(4);
+        predictor.record(frame(0, 0, 0, 350));
+        predictor.record(frame(1, 0, 0, 10));
+        // +20 deg/s across 360, not -340
+        assertEquals(20, predictor.predict(0).getHeading(), delta);
+    }
+
+    @Test
+    public void rollWrapsThroughInverted() {
+        LeaderPredictor predictor = new LeaderPredictor(4);
+        predictor.record(frame(0, 0, 170, 90));
+        predictor.record(frame(1, 0, -170, 90));
+        assertEquals(-160, predictor.predict(0).getRoll(), delta);
+    }
+}
@@ -0,0 +1,48 @@
+package com.kleingarn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MissionTickerTest {
+
+    @Test
+    public void countsTicksWithoutOverruns() {
+        MissionTicker ticker = new MissionTicker("test", 20);
+        for (int i = 0; i < 5; i++) {
+            ticker.awaitNextTick();
+        }
+        assertEquals(5, ticker.getTicks());
+        assertEquals(0, ticker.getOverruns());
+        assertEquals(0, ticker.getSkippedTicks());
+    }
+
+    @Test
+    public void overrunSkipsTheMissedBoundaries() throws InterruptedException {
+        MissionTicker ticker = new MissionTicker("test", 50);
+        ticker.awaitNextTick();
+        // the next boundary is 50 ms after the first tick, running 225 ms over it misses 3 more
+        Thread.sleep(225);
+        ticker.awaitNextTick();
+        assertEquals(2, ticker.getTicks());
+        assertEquals(1, ticker.getOverruns());
+        long skipped = ticker.getSkippedTicks();
+        assertTrue("skipped " + skipped, skipped >= 3 && skipped <= 4);
+
+        // merged, not caught up: the tick after the overrun waits for its boundary again
+        ticker.awaitNextTick();
+        assertEquals(3, ticker.getTicks());
+        assertEquals(1, ticker.getOverruns());
+        assertEquals(skipped, ticker.getSkippedTicks());
+    }
+
+    @Test
+    public void targetRateFollowsThePeriod() {
+        MissionTicker ticker = new MissionTicker("test", 1000);
+        assertEquals(1, ticker.getTargetHz(), 1e-9);
+        ticker.setTargetHz(10);
+        assertEquals(10, ticker.getTargetHz(), 1e-6);
+        assertEquals(100, ticker.getPeriodMillis());
+    }
+}
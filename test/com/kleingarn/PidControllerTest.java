@@ -0,0 +1,58 @@
+package com.kleingarn;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PidControllerTest {
+
+    private static final double delta = 1e-9;
+
+    @Test
+    public void proportionalOutputScalesWithError() {
+        PidController pid = new PidController(2, 0, 0, -100, 100);
+        assertEquals(6, pid.update(3, 0.1), delta);
+        assertEquals(-4, pid.update(-2, 0.1), delta);
+    }
+
+    @Test
+    public void integralAccumulatesErrorOverTime() {
+        PidController pid = new PidController(0, 1, 0, -100, 100);
+        assertEquals(1, pid.update(2, 0.5), delta);
+        assertEquals(2, pid.update(2, 0.5), delta);
+    }
+
+    @Test
+    public void derivativeStartsFromTheSecondUpdate() {
+        PidController pid = new PidController(0, 0, 1, -100, 100);
+        assertEquals(0, pid.update(1, 0.1), delta);
+        assertEquals(10, pid.update(2, 0.1), delta);
+    }
+
+    @Test
+    public void outputIsClampedToLimits() {
+        PidController pid = new PidController(10, 0, 0, -1, 1);
+        assertEquals(1, pid.update(5, 0.1), delta);
+        assertEquals(-1, pid.update(-5, 0.1), delta);
+    }
+
+    @Test
+    public void integralDoesNotWindUpWhileSaturated() {
+        PidController pid = new PidController(0, 1, 0, -1, 1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, pid.update(10, 1), delta);
+        }
+        // a wound up integral would hold the output at the limit long after the error flipped
+        assertEquals(-0.5, pid.update(-0.5, 1), delta);
+    }
+
+    @Test
+    public void resetForgetsIntegralAndLastError() {
+        PidController pid = new PidController(1, 1, 1, -100, 100);
+        pid.update(5, 1);
+        pid.update(7, 1);
+        pid.reset();
+        // as fresh: no integral carried over, no derivative on the first update
+        assertEquals(2 + 2 * 0.5, pid.update(2, 0.5), delta);
+    }
+}
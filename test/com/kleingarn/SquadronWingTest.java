@@ -0,0 +1,65 @@
+package com.kleingarn;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SquadronWingTest {
+
+    private static List<Integer> range(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private static List<Integer> sizes(List<List<Integer>> groups) {
+        List<Integer> sizes = new ArrayList<>();
+        for (List<Integer> group : groups) {
+            sizes.add(group.size());
+        }
+        return sizes;
+    }
+
+    @Test
+    public void lastGroupTakesTheRemainder() {
+        assertEquals(Arrays.asList(8, 8, 1), sizes(SquadronWing.partition(range(17), 8)));
+    }
+
+    @Test
+    public void exactMultipleFillsEveryGroup() {
+        assertEquals(Arrays.asList(8, 8), sizes(SquadronWing.partition(range(16), 8)));
+    }
+
+    @Test
+    public void smallListIsOneGroup() {
+        assertEquals(Collections.singletonList(3), sizes(SquadronWing.partition(range(3), 8)));
+    }
+
+    @Test
+    public void emptyListHasNoGroups() {
+        assertTrue(SquadronWing.partition(range(0), 8).isEmpty());
+    }
+
+    @Test
+    public void groupsKeepTheOrder() {
+        List<List<Integer>> groups = SquadronWing.partition(range(5), 2);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Collections.singletonList(4)), groups);
+    }
+
+    @Test
+    public void wingCountMatchesThePartition() {
+        for (int followers : new int[] {1, 7, 8, 9, 50, 200}) {
+            assertEquals(SquadronWing.partition(range(followers), 8).size(), SquadronWing.getWingCount(followers, 8));
+        }
+        // even an empty squadron gets the root wing
+        assertEquals(1, SquadronWing.getWingCount(0, 8));
+    }
+}